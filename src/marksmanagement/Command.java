@@ -0,0 +1,124 @@
+package marksmanagement;
+
+/**
+ * A command that was read from the input together with its validated arguments.
+ * A command that failed the validation carries the error message that has to
+ * be answered instead of executing it.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+class Command {
+    private final String input;
+    private final String name;
+    private String courseTitle;
+    private String studentName;
+    private int points;
+    private int count;
+    private String error;
+
+    /**
+     * Creates a new command.
+     *
+     * @param input The input line the command was read from.
+     * @param name The name of the command, e.g. 'add'.
+     */
+    Command(String input, String name) {
+        this.input = input;
+        this.name = name;
+        this.points = -1;
+    }
+
+    /**
+     * Marks the command as invalid.
+     *
+     * @param message The error message explaining why the command is invalid.
+     */
+    void reject(String message) {
+        this.error = message;
+    }
+
+    /**
+     * @return {@code true} if the command passed the validation, {@code false} otherwise.
+     */
+    boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * @return The error message of an invalid command, {@code null} for a valid one.
+     */
+    String getError() {
+        return error;
+    }
+
+    /**
+     * @return The input line the command was read from.
+     */
+    String getInput() {
+        return input;
+    }
+
+    /**
+     * @return The name of the command.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return The title of the course the command refers to, {@code null} if it refers to none.
+     */
+    String getCourseTitle() {
+        return courseTitle;
+    }
+
+    /**
+     * @param courseTitle The title of the course the command refers to.
+     */
+    void setCourseTitle(String courseTitle) {
+        this.courseTitle = courseTitle;
+    }
+
+    /**
+     * @return The name of the student the command refers to.
+     */
+    String getStudentName() {
+        return studentName;
+    }
+
+    /**
+     * @param studentName The name of the student the command refers to.
+     */
+    void setStudentName(String studentName) {
+        this.studentName = studentName;
+    }
+
+    /**
+     * @return The points passed with the command.
+     */
+    int getPoints() {
+        return points;
+    }
+
+    /**
+     * @param points The points passed with the command.
+     */
+    void setPoints(int points) {
+        this.points = points;
+    }
+
+    /**
+     * @return The number of students passed with the command.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @param count The number of students passed with the command.
+     */
+    void setCount(int count) {
+        this.count = count;
+    }
+}
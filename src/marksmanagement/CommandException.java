@@ -0,0 +1,21 @@
+package marksmanagement;
+
+/**
+ * Thrown when a valid command can't be executed on the current state of the
+ * courses, e.g. because the wanted course does not exist.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+class CommandException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param message The error message that is answered to the command.
+     */
+    CommandException(String message) {
+        super(message);
+    }
+}
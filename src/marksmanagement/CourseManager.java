@@ -0,0 +1,520 @@
+package marksmanagement;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import trie.DistinctSketch;
+import trie.QuantileSketch;
+import trie.Student;
+import trie.Trie;
+import trie.TrieSnapshot;
+
+/**
+ * Keeps the courses of study of a marks manager.
+ * <p>
+ * Without a directory all courses stay in the heap. With a directory, the
+ * courses are tiered: the recently used courses are kept in the heap as long as
+ * their estimated memory (see {@link Trie#estimatedSize()}) fits into the heap
+ * budget, and the least recently used ones are written to a file per course and
+ * dropped from the heap. A course on disk is loaded again on its first access.
+ * The courses found in the directory at start-up are available right away, but
+ * are only loaded when they are used. The courses in the heap that have changed
+ * since they have been loaded are written by {@link #flush()} when the program
+ * ends, so the directory always holds the latest state of all courses.
+ * <p>
+ * A course is pinned while a command is executed on it, so it is never evicted
+ * in the middle of a command. A course that has been evicted and loaded again is
+ * a new {@link Trie}, so its change feed and its versions start over. The
+ * subscribers of the evicted one are terminated with an error (see
+ * {@link Trie#closeChanges(String)}).
+ * <p>
+ * The sketches of a course on disk (see
+ * {@link #mergeSketchesInto(QuantileSketch, DistinctSketch)}) are kept in the
+ * heap, so institution-wide statistics never load a course. They are built
+ * while the course is written when it is evicted, or by reading its file once if
+ * the course has been found at start-up.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public class CourseManager {
+    private static final String SUFFIX = ".course";
+    private static final String FROZEN = ".frozen";
+
+    private final Function<String, Trie> courseFactory;
+    private final Path directory;
+    private final long heapBudget;
+    private final LinkedHashMap<String, Trie> resident;
+    private final Map<String, Long> sizes;
+    private final Map<String, Long> savedVersions;
+    private final Map<String, Integer> pins;
+    private final Set<String> onDisk;
+    private final Map<String, CourseSketches> diskSketches;
+    private long residentSize;
+    private long frozenCount;
+
+    /**
+     * Creates a new course manager keeping all courses in the heap.
+     *
+     * @param courseFactory The factory creating an empty course from its title.
+     */
+    public CourseManager(Function<String, Trie> courseFactory) {
+        this(courseFactory, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new course manager evicting courses to a directory.
+     *
+     * @param courseFactory The factory creating an empty course from its title.
+     * @param directory The directory the courses are written to, {@code null} to keep them in the heap.
+     * @param heapBudget The number of bytes the courses in the heap may occupy.
+     */
+    public CourseManager(Function<String, Trie> courseFactory, Path directory, long heapBudget) {
+        this.courseFactory = courseFactory;
+        this.directory = directory;
+        this.heapBudget = heapBudget;
+        this.resident = new LinkedHashMap<String, Trie>(16, 0.75f, true);
+        this.sizes = new HashMap<String, Long>();
+        this.savedVersions = new HashMap<String, Long>();
+        this.pins = new HashMap<String, Integer>();
+        this.onDisk = new HashSet<String>();
+        this.diskSketches = new HashMap<String, CourseSketches>();
+        if (directory != null) {
+            scan();
+        }
+    }
+
+    /**
+     * Gets a course, loading it from disk if needed.
+     *
+     * @param title The title of the course.
+     * @return The course, {@code null} if it does not exist.
+     * @throws UncheckedIOException If the course can't be loaded.
+     */
+    public synchronized Trie get(String title) {
+        Trie course = resident.get(title);
+        if (course == null && onDisk.contains(title)) {
+            course = load(title);
+        }
+        return course;
+    }
+
+    /**
+     * Checks if a course exists, without loading it.
+     *
+     * @param title The title of the course.
+     * @return {@code true} if the course exists, {@code false} otherwise.
+     */
+    public synchronized boolean contains(String title) {
+        return resident.containsKey(title) || onDisk.contains(title);
+    }
+
+    /**
+     * Creates a new empty course unless it already exists.
+     *
+     * @param title The title of the course.
+     * @return {@code true} if the course has been created, {@code false} if it already exists.
+     */
+    public synchronized boolean create(String title) {
+        if (contains(title)) {
+            return false;
+        }
+        admit(title, courseFactory.apply(title));
+        return true;
+    }
+
+    /**
+     * Replaces an existing course by a new empty one, deleting its file if it has
+     * one.
+     *
+     * @param title The title of the course.
+     * @return {@code true} if the course has been reset, {@code false} if it does not exist.
+     * @throws UncheckedIOException If the file of the course can't be deleted.
+     */
+    public synchronized boolean reset(String title) {
+        if (!contains(title)) {
+            return false;
+        }
+        discard(title);
+        admit(title, courseFactory.apply(title));
+        return true;
+    }
+
+    /**
+     * Removes a course, together with its file if it has one.
+     *
+     * @param title The title of the course.
+     * @return {@code true} if the course has been removed, {@code false} if it does not exist.
+     * @throws UncheckedIOException If the file of the course can't be deleted.
+     */
+    public synchronized boolean drop(String title) {
+        if (!contains(title)) {
+            return false;
+        }
+        discard(title);
+        return true;
+    }
+
+    /**
+     * @return The titles of all courses, in the heap or on disk, in alphabetical order.
+     */
+    public synchronized SortedSet<String> titles() {
+        SortedSet<String> titles = new TreeSet<String>(resident.keySet());
+        titles.addAll(onDisk);
+        return titles;
+    }
+
+    /**
+     * Merges the sketches of the points and the student names of all courses into
+     * other sketches. The courses in the heap are merged after the ones on disk
+     * without blocking the course manager, so changes made meanwhile may or may
+     * not be included. Both are merged in alphabetical order, so the same courses
+     * always give the same merged sketches.
+     *
+     * @param pointsSketch The sketch the points are merged into.
+     * @param namesSketch The sketch the student names are merged into.
+     * @throws UncheckedIOException If a course on disk without sketches can't be read.
+     */
+    public void mergeSketchesInto(QuantileSketch pointsSketch, DistinctSketch namesSketch) {
+        Collection<Trie> residentCourses;
+        synchronized (this) {
+            for (String title : new TreeSet<String>(onDisk)) {
+                CourseSketches sketches = diskSketches.get(title);
+                if (sketches == null) {
+                    sketches = readSketches(title);
+                    diskSketches.put(title, sketches);
+                }
+                pointsSketch.merge(sketches.points);
+                namesSketch.merge(sketches.names);
+            }
+            residentCourses = new TreeMap<String, Trie>(resident).values();
+        }
+        for (Trie course : residentCourses) {
+            course.mergeSketchesInto(pointsSketch, namesSketch);
+        }
+    }
+
+    /**
+     * Freezes the state of all courses, e.g. for a replication snapshot, without
+     * loading the courses on disk. A course in the heap is frozen as a snapshot of
+     * its trie, which takes constant time, and a course on disk as a hard link to
+     * its file, or a copy if the file system has no hard links.
+     *
+     * @return The frozen courses, which must be released after use.
+     * @throws UncheckedIOException If the file of a course can't be frozen.
+     */
+    public synchronized FrozenCourses freeze() {
+        SortedMap<String, TrieSnapshot> snapshots = new TreeMap<String, TrieSnapshot>();
+        for (Map.Entry<String, Trie> course : resident.entrySet()) {
+            snapshots.put(course.getKey(), course.getValue().snapshot());
+        }
+        SortedMap<String, Path> files = new TreeMap<String, Path>();
+        FrozenCourses frozen = new FrozenCourses(snapshots, files);
+        for (String title : onDisk) {
+            Path file = directory.resolve(title + SUFFIX);
+            Path link = directory.resolve(title + SUFFIX + FROZEN + ++frozenCount);
+            try {
+                try {
+                    Files.createLink(link, file);
+                } catch (UnsupportedOperationException | IOException ex) {
+                    Files.copy(file, link);
+                }
+            } catch (IOException ex) {
+                frozen.release();
+                throw new UncheckedIOException("the course '" + title + "' could not be frozen.", ex);
+            }
+            files.put(title, link);
+        }
+        return frozen;
+    }
+
+    /**
+     * Writes every course in the heap that has been created or changed since it
+     * has been loaded or written, so the courses are found in the directory by the
+     * next start. The courses stay in the heap. Without a directory, nothing is
+     * written.
+     *
+     * @throws UncheckedIOException If a course can't be written.
+     */
+    public synchronized void flush() {
+        if (directory == null) {
+            return;
+        }
+        for (Map.Entry<String, Trie> entry : resident.entrySet()) {
+            String title = entry.getKey();
+            Trie course = entry.getValue();
+            Long saved = savedVersions.get(title);
+            if (saved == null || saved != course.getSequence()) {
+                long sequence = course.getSequence();
+                save(title, course);
+                savedVersions.put(title, sequence);
+            }
+        }
+    }
+
+    /**
+     * Pins a course, so it isn't evicted until it is unpinned again. A course may
+     * be pinned before it exists.
+     *
+     * @param title The title of the course.
+     */
+    public synchronized void pin(String title) {
+        pins.merge(title, 1, Integer::sum);
+    }
+
+    /**
+     * Unpins a course and accounts for the memory it occupies after the changes
+     * made while it was pinned. Courses are evicted if the heap budget is exceeded.
+     *
+     * @param title The title of the course.
+     * @throws UncheckedIOException If an evicted course can't be written.
+     */
+    public synchronized void unpin(String title) {
+        if (pins.merge(title, -1, Integer::sum) == 0) {
+            pins.remove(title);
+        }
+        Trie course = resident.get(title);
+        if (course != null) {
+            account(title, course.estimatedSize());
+        }
+        evict(null);
+    }
+
+    /**
+     * @return The estimated number of bytes the courses in the heap occupy.
+     */
+    public synchronized long getResidentSize() {
+        return residentSize;
+    }
+
+    /**
+     * @return The number of courses in the heap.
+     */
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * Adds a course to the courses in the heap.
+     *
+     * @param title The title of the course.
+     * @param course The course.
+     */
+    private void admit(String title, Trie course) {
+        resident.put(title, course);
+        account(title, course.estimatedSize());
+        evict(title);
+    }
+
+    /**
+     * Updates the accounted memory of a course in the heap.
+     *
+     * @param title The title of the course.
+     * @param size The estimated number of bytes the course occupies.
+     */
+    private void account(String title, long size) {
+        Long previous = sizes.put(title, size);
+        residentSize += size - (previous == null ? 0 : previous);
+    }
+
+    /**
+     * Removes a course from the heap and from disk, ending its change feed.
+     *
+     * @param title The title of the course.
+     * @throws UncheckedIOException If the file of the course can't be deleted.
+     */
+    private void discard(String title) {
+        Trie course = resident.get(title);
+        if (course != null) {
+            course.closeChanges("the course '" + title + "' has been reset or removed.");
+        }
+        dropResident(title);
+        savedVersions.remove(title);
+        onDisk.remove(title);
+        diskSketches.remove(title);
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(directory.resolve(title + SUFFIX));
+            } catch (IOException ex) {
+                throw new UncheckedIOException("the course '" + title + "' could not be deleted.", ex);
+            }
+        }
+    }
+
+    /**
+     * Removes a course from the heap without writing it.
+     *
+     * @param title The title of the course.
+     */
+    private void dropResident(String title) {
+        resident.remove(title);
+        Long size = sizes.remove(title);
+        if (size != null) {
+            residentSize -= size;
+        }
+    }
+
+    /**
+     * Evicts the least recently used courses that aren't pinned until the courses
+     * in the heap fit into the heap budget. A course that hasn't changed since it
+     * has been loaded or written isn't written again.
+     *
+     * @param keep The title of a course that must stay in the heap, {@code null} if there is none.
+     */
+    private void evict(String keep) {
+        if (directory == null) {
+            return;
+        }
+        Iterator<Map.Entry<String, Trie>> lru = resident.entrySet().iterator();
+        while (residentSize > heapBudget && lru.hasNext()) {
+            Map.Entry<String, Trie> entry = lru.next();
+            String title = entry.getKey();
+            if (pins.containsKey(title) || title.equals(keep)) {
+                continue;
+            }
+            Trie course = entry.getValue();
+            Long saved = savedVersions.get(title);
+            CourseSketches sketches;
+            if (saved == null || saved != course.getSequence()) {
+                sketches = save(title, course);
+            } else {
+                // unchanged since it has been loaded, so its sketches are up to date
+                sketches = new CourseSketches();
+                course.mergeSketchesInto(sketches.points, sketches.names);
+            }
+            lru.remove();
+            course.closeChanges("the course '" + title + "' has been evicted, please subscribe to it again.");
+            residentSize -= sizes.remove(title);
+            savedVersions.remove(title);
+            onDisk.add(title);
+            diskSketches.put(title, sketches);
+        }
+    }
+
+    /**
+     * Writes a course to its file, one student per line followed by their points.
+     * The file is replaced atomically. The sketches of the course are built along
+     * the way.
+     *
+     * @param title The title of the course.
+     * @param course The course.
+     * @return The sketches of the written students.
+     */
+    private CourseSketches save(String title, Trie course) {
+        CourseSketches sketches = new CourseSketches();
+        try {
+            Path file = directory.resolve(title + SUFFIX);
+            Path temporary = directory.resolve(title + SUFFIX + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Student student : course.snapshot().range(0, Integer.MAX_VALUE)) {
+                    writer.write(student.getName() + ";" + student.getPoints());
+                    writer.newLine();
+                    sketches.points.update(student.getPoints());
+                    sketches.names.update(student.getName());
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the course '" + title + "' could not be written.", ex);
+        }
+        return sketches;
+    }
+
+    /**
+     * Loads a course from its file into the heap.
+     *
+     * @param title The title of the course.
+     * @return The loaded course.
+     */
+    private Trie load(String title) {
+        Trie course = courseFactory.apply(title);
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(title + SUFFIX),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf(';');
+                course.add(line.substring(0, separator), Integer.parseInt(line.substring(separator + 1)));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the course '" + title + "' could not be loaded.", ex);
+        }
+        onDisk.remove(title);
+        diskSketches.remove(title);
+        savedVersions.put(title, course.getSequence());
+        admit(title, course);
+        return course;
+    }
+
+    /**
+     * Builds the sketches of a course on disk by reading its file, without loading
+     * the course into the heap.
+     *
+     * @param title The title of the course.
+     * @return The sketches of the course.
+     * @throws UncheckedIOException If the file can't be read.
+     */
+    private CourseSketches readSketches(String title) {
+        CourseSketches sketches = new CourseSketches();
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(title + SUFFIX),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf(';');
+                sketches.points.update(Integer.parseInt(line.substring(separator + 1)));
+                sketches.names.update(line.substring(0, separator));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the course '" + title + "' could not be read.", ex);
+        }
+        return sketches;
+    }
+
+    /**
+     * Registers the courses that are found in the directory.
+     */
+    private void scan() {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    onDisk.add(name.substring(0, name.length() - SUFFIX.length()));
+                }
+            }
+            // frozen files left behind by a previous run
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX + FROZEN + "*")) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the course directory could not be read.", ex);
+        }
+    }
+
+    /**
+     * The sketches of the points and the student names of a course on disk.
+     */
+    private static final class CourseSketches {
+        private final QuantileSketch points = new QuantileSketch();
+        private final DistinctSketch names = new DistinctSketch();
+    }
+}
@@ -0,0 +1,93 @@
+package marksmanagement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import trie.Student;
+import trie.TrieSnapshot;
+
+/**
+ * The state of all courses of a {@link CourseManager} at one point in time, taken
+ * by {@link CourseManager#freeze()} without loading the courses on disk.
+ * <p>
+ * A course in the heap is frozen as a snapshot of its trie. A course on disk is
+ * frozen as a link to its file, which keeps its content even if the course is
+ * written again or removed meanwhile, and is only read when its students are
+ * needed. The links are deleted by {@link #release()}.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+final class FrozenCourses {
+    private final SortedMap<String, TrieSnapshot> resident;
+    private final SortedMap<String, Path> files;
+
+    /**
+     * Creates new frozen courses.
+     *
+     * @param resident The snapshots of the courses in the heap by their titles.
+     * @param files The frozen files of the courses on disk by their titles.
+     */
+    FrozenCourses(SortedMap<String, TrieSnapshot> resident, SortedMap<String, Path> files) {
+        this.resident = resident;
+        this.files = files;
+    }
+
+    /**
+     * @return The titles of all courses in alphabetical order.
+     */
+    SortedSet<String> titles() {
+        SortedSet<String> titles = new TreeSet<String>(resident.keySet());
+        titles.addAll(files.keySet());
+        return titles;
+    }
+
+    /**
+     * Gets the students of a frozen course, reading its file if it has been on
+     * disk.
+     *
+     * @param title The title of the course.
+     * @return The students of the course.
+     * @throws UncheckedIOException If the file of the course can't be read.
+     */
+    List<Student> students(String title) {
+        TrieSnapshot snapshot = resident.get(title);
+        if (snapshot != null) {
+            return snapshot.range(0, Integer.MAX_VALUE);
+        }
+        List<Student> students = new ArrayList<Student>();
+        try (BufferedReader reader = Files.newBufferedReader(files.get(title), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf(';');
+                students.add(new Student(line.substring(0, separator),
+                        Integer.parseInt(line.substring(separator + 1))));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the course '" + title + "' could not be read.", ex);
+        }
+        return students;
+    }
+
+    /**
+     * Deletes the frozen files. Files that can't be deleted are left behind and
+     * deleted by the next course manager scanning the directory.
+     */
+    void release() {
+        for (Path file : files.values()) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                // left behind, see above
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package marksmanagement;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring assigning course titles to shards.
+ * <p>
+ * Every shard is placed on the ring at a number of pseudo-random points, its
+ * virtual nodes, and a course belongs to the shard of the first point at or
+ * after the hash of its title. Adding a shard therefore only moves the courses
+ * that now fall before one of its points, which are about {@code 1/n} of all
+ * courses for {@code n} shards, and the virtual nodes spread them evenly over the
+ * shards.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+class HashRing {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Long, String> points;
+    private final List<String> shards;
+
+    /**
+     * Creates a new empty ring.
+     */
+    HashRing() {
+        this.points = new TreeMap<Long, String>();
+        this.shards = new ArrayList<String>();
+    }
+
+    /**
+     * Places a shard on the ring.
+     *
+     * @param shard The address of the shard.
+     */
+    void add(String shard) {
+        shards.add(shard);
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+            points.put(hash(shard + "#" + i), shard);
+        }
+    }
+
+    /**
+     * @param courseTitle The title of a course.
+     * @return The address of the shard the course belongs to.
+     */
+    String shardOf(String courseTitle) {
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(courseTitle));
+        if (point == null) {
+            point = points.firstEntry();
+        }
+        return point.getValue();
+    }
+
+    /**
+     * @return The addresses of the shards in the order they have been added.
+     */
+    List<String> getShards() {
+        return shards;
+    }
+
+    /**
+     * Hashes a key to a point on the ring, which is taken from the first eight
+     * bytes of its MD5 digest.
+     *
+     * @param key The key.
+     * @return The point of the key.
+     */
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long point = 0;
+            for (int i = 0; i < 8; i++) {
+                point = (point << 8) | (digest[i] & 0xff);
+            }
+            return point;
+        } catch (NoSuchAlgorithmException ex) { // should never happen, every Java platform supports MD5
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -1,5 +1,13 @@
 package marksmanagement;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.Function;
+import edu.kit.informatik.Terminal;
+import trie.StudentDictionary;
+import trie.Trie;
+
 /**
  * This is the entry point class for the program containing the main method.
  *
@@ -10,12 +18,169 @@ public class Main {
     
     /**
      * The main method of the program.
+     * <p>
+     * The following options can be passed:
+     * <ul>
+     * <li>{@code --names=<regex>}: the format of the accepted student names.
+     * <li>{@code --storage=<kind>}: how the courses store their students, either
+     * {@code trie} (the default), {@code fixed}, which stores them in
+     * direct-indexed arrays and requires the default student name format, or
+     * {@code shared}, which numbers the students in one dictionary shared by all
+     * courses.
+     * <li>{@code --filter}: keeps a Bloom filter per course that answers most
+     * lookups of students who aren't in the course without searching for them.
+     * <li>{@code --course-dir=<path>}: the directory the least recently used courses
+     * are evicted to when the heap budget is exceeded. The courses found in it are
+     * loaded on their first use, and the changed courses in the heap are written
+     * to it when the program ends.
+     * <li>{@code --heap-budget=<bytes>}: the estimated heap memory the courses may
+     * occupy, 64 MiB by default.
+     * <li>{@code --pipelined}: runs the commands in a {@link PipelinedRunner}.
+     * <li>{@code --lanes=<n>}: the number of executor lanes of the pipeline, the
+     * number of available processors by default, at least 1.
+     * <li>{@code --buffer=<n>}: the capacity of the ring buffers of the pipeline,
+     * at least 1.
+     * <li>{@code --worker=<port>}: serves the courses as a {@link ShardWorker} on
+     * the given local port instead of the terminal. It can't be combined with
+     * {@code --pipelined}, {@code --record} or {@code --replay}.
+     * <li>{@code --router=<host>:<port>,...}: runs a {@link ShardRouter} that
+     * distributes the courses across the given workers. Only the student name
+     * format applies to the router, the other options apply to the workers.
+     * <li>{@code --leader=<port>}: streams the changes to followers connecting to
+     * the given local port (see {@link ReplicationServer}).
+     * <li>{@code --follow=<host>:<port>}: runs as a read-only follower of the
+     * leader at the given address.
+     * <li>{@code --max-staleness=<ms>}: the maximal staleness a follower answers
+     * reads with, 1000 ms by default.
+     * <li>{@code --record=<file>}: records the input lines, their times and their
+     * responses into the given file (see {@link WorkloadRecorder}). It can't be
+     * combined with {@code --pipelined} or {@code --replay}.
+     * <li>{@code --replay=<file>}: replays a recorded workload instead of reading
+     * the terminal and reports its performance (see {@link WorkloadReplayer}),
+     * submitting the commands to the pipeline if {@code --pipelined} is given.
+     * <li>{@code --max-speed}: replays the workload as fast as possible instead of
+     * at its original pace.
+     * </ul>
      *
      * @param args The arguments that are passed to the program at launch as array.
      */
     public static void main(String[] args) {
-        MarksManagement mgmt = new MarksManagement();
+        String studentNameFormat = MarksManagement.DEFAULT_STUDENT_NAME_FORMAT;
+        String storage = "trie";
+        boolean filter = false;
+        Path courseDirectory = null;
+        long heapBudget = 64L * 1024 * 1024;
+        boolean pipelined = false;
+        int lanes = Runtime.getRuntime().availableProcessors();
+        int bufferSize = 1024;
+        int workerPort = -1;
+        String routedShards = null;
+        int leaderPort = -1;
+        String leader = null;
+        long maxStaleness = 1000;
+        Path recording = null;
+        Path replay = null;
+        boolean maxSpeed = false;
+        for (String arg : args) {
+            if (arg.startsWith("--names=")) {
+                studentNameFormat = arg.substring("--names=".length());
+            } else if (arg.startsWith("--storage=")) {
+                storage = arg.substring("--storage=".length());
+            } else if (arg.equals("--filter")) {
+                filter = true;
+            } else if (arg.startsWith("--course-dir=")) {
+                courseDirectory = Paths.get(arg.substring("--course-dir=".length()));
+            } else if (arg.startsWith("--heap-budget=")) {
+                heapBudget = Long.parseLong(arg.substring("--heap-budget=".length()));
+            } else if (arg.equals("--pipelined")) {
+                pipelined = true;
+            } else if (arg.startsWith("--lanes=")) {
+                lanes = Integer.parseInt(arg.substring("--lanes=".length()));
+            } else if (arg.startsWith("--buffer=")) {
+                bufferSize = Integer.parseInt(arg.substring("--buffer=".length()));
+            } else if (arg.startsWith("--worker=")) {
+                workerPort = Integer.parseInt(arg.substring("--worker=".length()));
+            } else if (arg.startsWith("--router=")) {
+                routedShards = arg.substring("--router=".length());
+            } else if (arg.startsWith("--leader=")) {
+                leaderPort = Integer.parseInt(arg.substring("--leader=".length()));
+            } else if (arg.startsWith("--follow=")) {
+                leader = arg.substring("--follow=".length());
+            } else if (arg.startsWith("--max-staleness=")) {
+                maxStaleness = Long.parseLong(arg.substring("--max-staleness=".length()));
+            } else if (arg.startsWith("--record=")) {
+                recording = Paths.get(arg.substring("--record=".length()));
+            } else if (arg.startsWith("--replay=")) {
+                replay = Paths.get(arg.substring("--replay=".length()));
+            } else if (arg.equals("--max-speed")) {
+                maxSpeed = true;
+            }
+        }
+        if (lanes < 1 || bufferSize < 1) {
+            Terminal.printError("the pipeline needs at least one lane and a buffer of at least one line.");
+            return;
+        }
+        if (recording != null && replay != null) {
+            Terminal.printError("a workload can't be recorded and replayed at once.");
+            return;
+        }
+        if (workerPort != -1 && (pipelined || recording != null || replay != null)) {
+            Terminal.printError("a worker can't be pipelined, recorded or replayed.");
+            return;
+        }
+        if (recording != null && pipelined) {
+            Terminal.printError("a pipelined run can't be recorded.");
+            return;
+        }
+        if (routedShards != null) {
+            new ShardRouter(studentNameFormat, Arrays.asList(routedShards.split(","))).run();
+            return;
+        }
+        Function<String, Trie> courseFactory;
+        if (storage.equals("fixed")) {
+            if (!studentNameFormat.equals(MarksManagement.DEFAULT_STUDENT_NAME_FORMAT)) {
+                Terminal.printError("the fixed storage only supports the default student name format.");
+                return;
+            }
+            courseFactory = Trie::withFixedFormat;
+        } else if (storage.equals("shared")) {
+            StudentDictionary dictionary = new StudentDictionary();
+            courseFactory = title -> Trie.withDictionary(title, dictionary);
+        } else if (storage.equals("trie")) {
+            courseFactory = Trie::new;
+        } else {
+            Terminal.printError("unknown storage: ".concat(storage));
+            return;
+        }
+        if (filter) {
+            courseFactory = courseFactory.andThen(Trie::enableFilter);
+        }
+        CourseManager courses = new CourseManager(courseFactory, courseDirectory, heapBudget);
+        MarksManagement mgmt = new MarksManagement(studentNameFormat, courses);
+        if (leaderPort != -1) {
+            // the courses found in the course directory are only sent to followers by a snapshot
+            ReplicationLog log = new ReplicationLog(courses.titles().isEmpty() ? 0 : 1);
+            mgmt.setReplicationLog(log);
+            new ReplicationServer(log, courses, leaderPort).start();
+        }
+        if (leader != null) {
+            Replica replica = new Replica(new MarksManagement(studentNameFormat, courses), leader, maxStaleness);
+            mgmt.setReplica(replica);
+            replica.start();
+        }
         
-        mgmt.run();
+        if (replay != null) {
+            PipelinedRunner pipeline = pipelined ? new PipelinedRunner(mgmt, lanes, bufferSize) : null;
+            new WorkloadReplayer(mgmt, pipeline, replay, maxSpeed).run();
+        } else if (recording != null) {
+            new WorkloadRecorder(mgmt, recording).run();
+        } else if (workerPort != -1) {
+            new ShardWorker(mgmt, workerPort).run();
+        } else if (pipelined) {
+            new PipelinedRunner(mgmt, lanes, bufferSize).run();
+        } else {
+            mgmt.run();
+        }
+        courses.flush();
     }
 }
\ No newline at end of file
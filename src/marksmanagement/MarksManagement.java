@@ -1,32 +1,130 @@
 package marksmanagement;
 
-import java.util.LinkedList;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import edu.kit.informatik.Terminal;
+import trie.DistinctSketch;
+import trie.QuantileSketch;
+import trie.Student;
 import trie.Trie;
 
 /**
  * This class controls the flow of the game.
+ * <p>
+ * Every input line is first parsed into a {@link Command} and then executed,
+ * which results in at most one response line. The execution of a command only
+ * touches the course it refers to, so commands of different courses can be
+ * executed concurrently (see {@link PipelinedRunner}). The courses are kept by a
+ * {@link CourseManager}.
+ * <p>
+ * The 'add', 'modify' and 'delete' commands between a 'begin' and a 'commit'
+ * command form a {@link Transaction}. They are only validated for their syntax
+ * and answered with 'OK' when they are read. The 'commit' command checks all of
+ * them against the courses and applies them as one batch per course, or none of
+ * them if one fails. The 'prepare' command only checks them and keeps the
+ * transaction open. The 'abort' command discards them. Other commands are
+ * executed right away and don't see the changes of an open transaction.
+ * <p>
+ * A marks manager can be the leader of a replication, which records the command
+ * lines that changed its courses in a {@link ReplicationLog}, or a follower,
+ * which rejects changes and only answers reads while its {@link Replica} is
+ * fresh enough.
+ * <p>
+ * The 'percentile' and 'distinct' commands answer statistics over all courses
+ * approximately by merging the sketches every course keeps (see
+ * {@link QuantileSketch} and {@link DistinctSketch} for their error bounds),
+ * instead of scanning all students.
  *
  * @author Moayad Yaghi
  * @version 1.0
  */
 public class MarksManagement {
+    /**
+     * The format of the student names that is accepted if no other format is given.
+     */
+    public static final String DEFAULT_STUDENT_NAME_FORMAT = "u{1}[a-z]{4}";
+
+    private static final String ERROR_PREFIX = "Error, ";
+    private static final List<String> CHANGES = Arrays.asList("create", "reset", "drop", "add", "modify",
+            "delete", "commit");
+    private static final List<String> READS = Arrays.asList("courses", "credits", "print", "average", "median",
+            "top", "atleast", "atmost", "similar", "percentile", "distinct", "sketch");
+
     private boolean isRunning = true;
-    private String input;
-    private String courseTitle;
-    private String studentName;
-    private int points;
-    private LinkedList<Trie> courses;
+    private CourseManager courses;
+    private Pattern studentNameFormat;
+    private Transaction transaction;
+    private ReplicationLog log;
+    private Replica replica;
 
     /**
      * Creates a new marks manager and setting the attributes to trivial initial
      * values.
      */
     public MarksManagement() {
-        this.courseTitle = "";
-        this.studentName = "";
-        this.points = 0;
-        this.courses = new LinkedList<Trie>();
+        this(DEFAULT_STUDENT_NAME_FORMAT);
+    }
+
+    /**
+     * Creates a new marks manager that accepts student names matching the given
+     * regular expression. Unicode character classes such as {@code \\p{L}} can be
+     * used, so names of any alphabet can be accepted.
+     *
+     * @param studentNameFormat The regular expression a student name has to match.
+     */
+    public MarksManagement(String studentNameFormat) {
+        this(studentNameFormat, Trie::new);
+    }
+
+    /**
+     * Creates a new marks manager that accepts student names matching the given
+     * regular expression and creates its courses by the given factory, e.g.
+     * {@link Trie#withFixedFormat(String)} for the default student name format.
+     *
+     * @param studentNameFormat The regular expression a student name has to match.
+     * @param courseFactory The factory creating an empty course from its title.
+     */
+    public MarksManagement(String studentNameFormat, Function<String, Trie> courseFactory) {
+        this(studentNameFormat, new CourseManager(courseFactory));
+    }
+
+    /**
+     * Creates a new marks manager that accepts student names matching the given
+     * regular expression and keeps its courses in the given course manager.
+     *
+     * @param studentNameFormat The regular expression a student name has to match.
+     * @param courses The course manager keeping the courses.
+     */
+    public MarksManagement(String studentNameFormat, CourseManager courses) {
+        this.courses = courses;
+        this.studentNameFormat = Pattern.compile(studentNameFormat, Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    /**
+     * Makes this marks manager the leader of a replication.
+     *
+     * @param log The log the command lines that change the courses are appended to.
+     */
+    public void setReplicationLog(ReplicationLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Makes this marks manager a follower of a replication, which rejects all
+     * changes and only answers reads while the replica is fresh enough.
+     *
+     * @param replica The replica keeping the courses up to date with the leader.
+     */
+    public void setReplica(Replica replica) {
+        this.replica = replica;
     }
 
     /**
@@ -35,80 +133,520 @@ public class MarksManagement {
      */
     public void run() {
         while (isRunning) {
-            String[] args = new String[0];
-            input = Terminal.readLine();
-            if (!emptyCommand()) {
-                String[] rawCmd = input.split(" ");
-                String rawArgs;
-                String command = rawCmd[0];
-                if (rawCmd.length > 1) {
-                    rawArgs = rawCmd[1];
-                    args = rawArgs.split(";");
+            String response = process(Terminal.readLine());
+            if (response != null) {
+                Terminal.printLine(response);
+            }
+        }
+    }
+
+    /**
+     * Parses and executes one input line. The end of the input is handled like the
+     * 'quit' command.
+     *
+     * @param line The input line, {@code null} if the end of the input has been reached.
+     * @return The response to the line, {@code null} if there is none.
+     */
+    public String process(String line) {
+        Command command = parse(line);
+        if (command.isValid() && command.getName().equals("quit")) {
+            isRunning = false;
+        }
+        if (isBuffered(command)) {
+            return buffer(command);
+        }
+        return execute(command);
+    }
+
+    /**
+     * Checks if the marks manager is still running, that is no 'quit' command has
+     * been processed yet.
+     *
+     * @return {@code true} if the marks manager is running, {@code false} otherwise.
+     */
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    /**
+     * Splits an input line into the command and its arguments and validates them.
+     *
+     * @param line The input line, {@code null} if the end of the input has been reached.
+     * @return The parsed command, which might be invalid.
+     */
+    Command parse(String line) {
+        if (line == null) {
+            return new Command("quit", "quit");
+        }
+        if (emptyCommand(line)) {
+            Command command = new Command(line, "");
+            command.reject("your input is invalid, please input one of the valid commands.");
+            return command;
+        }
+        String[] args = new String[0];
+        String[] rawCmd = line.split(" ");
+        if (rawCmd.length > 1) {
+            args = rawCmd[1].split(";");
+        }
+        Command command = new Command(line, rawCmd[0]);
+        validateInput(command, args);
+        return command;
+    }
+
+    /**
+     * Executes a parsed command right away, even if it belongs to the open
+     * transaction (see {@link #isBuffered(Command)}). Invalid commands are answered
+     * with their error message. The course the command refers to is pinned during
+     * the execution, so it can't be evicted by the course manager in the meantime.
+     * A successful change is appended to the replication log, if there is one.
+     *
+     * @param command The command to be executed.
+     * @return The response to the command, {@code null} if there is none.
+     */
+    String execute(Command command) {
+        if (!command.isValid()) {
+            return ERROR_PREFIX + command.getError();
+        }
+        String courseTitle = command.getCourseTitle();
+        if (courseTitle != null) {
+            courses.pin(courseTitle);
+        }
+        try {
+            if (replica != null) {
+                checkReplica(command);
+            }
+            if (log == null || !CHANGES.contains(command.getName())) {
+                return dispatch(command);
+            }
+            List<String> lines = loggedLines(command);
+            log.beginChange();
+            try {
+                String response = dispatch(command);
+                log.append(lines);
+                return response;
+            } finally {
+                log.endChange();
+            }
+        } catch (CommandException ex) {
+            return ERROR_PREFIX + ex.getMessage();
+        } catch (UncheckedIOException ex) {
+            return ERROR_PREFIX + ex.getMessage();
+        } finally {
+            if (courseTitle != null) {
+                courses.unpin(courseTitle);
+            }
+        }
+    }
+
+    /**
+     * Executes a valid command.
+     *
+     * @param command The command to be executed.
+     * @return The response to the command, {@code null} if there is none.
+     * @throws CommandException If the command fails.
+     */
+    private String dispatch(Command command) throws CommandException {
+        switch (command.getName()) {
+            case "create":
+                return create(command);
+            case "reset":
+                return reset(command);
+            case "drop":
+                return drop(command);
+            case "courses":
+                return courses();
+            case "add":
+                return add(command);
+            case "modify":
+                return modify(command);
+            case "delete":
+                return delete(command);
+            case "credits":
+                return credits(command);
+            case "print":
+                return print(command);
+            case "average":
+                return average(command);
+            case "median":
+                return median(command);
+            case "top":
+                return students(hasStudents(command).top(command.getCount()));
+            case "atleast":
+                return students(hasStudents(command).range(command.getPoints(), Integer.MAX_VALUE));
+            case "atmost":
+                return students(hasStudents(command).range(0, command.getPoints()));
+            case "similar":
+                return students(hasStudents(command).similar(command.getStudentName(), command.getCount()));
+            case "begin":
+                return begin();
+            case "commit":
+                return commit();
+            case "prepare":
+                return prepare();
+            case "abort":
+                return abort();
+            case "lag":
+                return lag();
+            case "percentile":
+                return String.valueOf(mergedSketches().percentile(command.getCount()));
+            case "distinct":
+                return distinct();
+            case "sketch":
+                return sketch();
+            case "quit":
+                return null;
+            default:
+                return ERROR_PREFIX + "invalid command: ".concat(command.getInput());
+        }
+    }
+
+    /**
+     * Checks if a follower may execute a command. Changes are only made by the
+     * leader, and reads are only answered while the follower is fresh enough.
+     *
+     * @param command The command.
+     * @throws CommandException If the command is a change, or a read while the follower is too stale.
+     */
+    private void checkReplica(Command command) throws CommandException {
+        String name = command.getName();
+        if (READS.contains(name)) {
+            replica.checkStaleness();
+        } else if (!name.equals("lag") && !name.equals("quit")) {
+            throw new CommandException("this is a read-only follower, please send changes to the leader.");
+        }
+    }
+
+    /**
+     * Gets the lines a change is recorded by in the replication log. A transaction
+     * is recorded by all its commands between a 'begin' and a 'commit' line.
+     *
+     * @param command The change.
+     * @return The lines of the change.
+     */
+    private List<String> loggedLines(Command command) {
+        if (!command.getName().equals("commit")) {
+            return Arrays.asList(command.getInput());
+        }
+        List<String> lines = new ArrayList<String>();
+        if (transaction != null) {
+            lines.add("begin");
+            for (String courseTitle : transaction.getCourseTitles()) {
+                for (Command change : transaction.getCommands(courseTitle)) {
+                    lines.add(change.getInput());
+                }
+            }
+            lines.add("commit");
+        }
+        return lines;
+    }
+
+    /**
+     * Reports the replication lag of a follower.
+     *
+     * @return The sequence number of the last line applied from the leader and the
+     *         staleness in milliseconds, separated by a space.
+     * @throws CommandException If this is not a follower or it hasn't reached the leader yet.
+     */
+    private String lag() throws CommandException {
+        if (replica == null) {
+            throw new CommandException("this is not a follower.");
+        }
+        long staleness = replica.getStalenessMillis();
+        if (staleness == Long.MAX_VALUE) {
+            throw new CommandException("the follower has not reached the leader yet.");
+        }
+        return replica.getApplied() + " " + staleness;
+    }
+
+    /**
+     * Checks if a command is buffered in the open transaction instead of being
+     * executed.
+     *
+     * @param command The parsed command.
+     * @return {@code true} if a transaction is open and the command is a valid
+     *         'add', 'modify' or 'delete' command, {@code false} otherwise.
+     */
+    boolean isBuffered(Command command) {
+        if (transaction == null || !command.isValid()) {
+            return false;
+        }
+        String name = command.getName();
+        return name.equals("add") || name.equals("modify") || name.equals("delete");
+    }
+
+    /**
+     * Adds a command to the open transaction.
+     *
+     * @param command A command that is buffered as by {@link #isBuffered(Command)}.
+     * @return The response to the command.
+     */
+    String buffer(Command command) {
+        transaction.add(command);
+        return "OK";
+    }
+
+    /**
+     * Opens a transaction.
+     *
+     * @return The response to the command.
+     * @throws CommandException If a transaction is already open.
+     */
+    private String begin() throws CommandException {
+        if (transaction != null) {
+            throw new CommandException("there is already an open transaction, please commit or abort it first.");
+        }
+        transaction = new Transaction();
+        return "OK";
+    }
+
+    /**
+     * Discards the open transaction.
+     *
+     * @return The response to the command.
+     * @throws CommandException If there is no open transaction.
+     */
+    private String abort() throws CommandException {
+        if (transaction == null) {
+            throw new CommandException("there is no open transaction.");
+        }
+        transaction = null;
+        return "OK";
+    }
+
+    /**
+     * Commits the open transaction. The transaction is closed in any case.
+     * <p>
+     * It does it by checking the commands of every course in their input order
+     * against the course as it would be after the previous commands, with the same
+     * checks the commands have when they are executed right away. The result is
+     * the new points of every changed student per course. Only if all commands
+     * pass, the changes of every course are applied by {@link Trie#apply(Map)} in
+     * a single pass over the course.
+     *
+     * @return The response to the command.
+     * @throws CommandException If there is no open transaction or one of its commands fails.
+     */
+    private String commit() throws CommandException {
+        if (transaction == null) {
+            throw new CommandException("there is no open transaction.");
+        }
+        Transaction committed = transaction;
+        transaction = null;
+        for (String courseTitle : committed.getCourseTitles()) {
+            courses.pin(courseTitle);
+        }
+        try {
+            Map<Trie, Map<String, Integer>> batches = stageAll(committed);
+            for (Map.Entry<Trie, Map<String, Integer>> batch : batches.entrySet()) {
+                // the staging has checked every name, so no course refuses its batch after another one is applied
+                if (!batch.getKey().apply(batch.getValue())) { // should never happen
+                    throw new CommandException("unknown error occured.");
                 }
-                if (validateInput(command, args)) {
-                    switch (command) {
-                        case "create":
-                            create();
-                            break;
-                        case "reset":
-                            reset();
-                            break;
-                        case "add":
-                            add();
-                            break;
-                        case "modify":
-                            modify();
-                            break;
-                        case "delete":
-                            delete();
-                            break;
-                        case "credits":
-                            credits();
-                            break;
-                        case "print":
-                            print();
-                            break;
-                        case "average":
-                            average();
-                            break;
-                        case "median":
-                            median();
-                            break;
-                        case "quit":
-                            isRunning = false;
-                            break;
-                        default:
-                            Terminal.printError("invalid command: ".concat(input));
-                            break;
-                    }
+            }
+        } finally {
+            for (String courseTitle : committed.getCourseTitles()) {
+                courses.unpin(courseTitle);
+            }
+        }
+        return "OK";
+    }
+
+    /**
+     * Checks the open transaction like 'commit' does, without applying it. The
+     * transaction stays open, so it can be committed or aborted afterwards. A
+     * router uses it to check a transaction over several workers on all of them
+     * before it commits it on any (see {@link ShardRouter}).
+     *
+     * @return The response to the command.
+     * @throws CommandException If there is no open transaction or one of its commands fails.
+     */
+    private String prepare() throws CommandException {
+        if (transaction == null) {
+            throw new CommandException("there is no open transaction.");
+        }
+        for (String courseTitle : transaction.getCourseTitles()) {
+            courses.pin(courseTitle);
+        }
+        try {
+            stageAll(transaction);
+        } finally {
+            for (String courseTitle : transaction.getCourseTitles()) {
+                courses.unpin(courseTitle);
+            }
+        }
+        return "OK";
+    }
+
+    /**
+     * Checks the commands of every course of a transaction, in the alphabetical
+     * order of the courses, and records the changes they make. The courses must be
+     * pinned.
+     *
+     * @param checked The transaction.
+     * @return The new points by student's name per course, -1 for a deleted student.
+     * @throws CommandException If one of the commands fails.
+     */
+    private Map<Trie, Map<String, Integer>> stageAll(Transaction checked) throws CommandException {
+        Map<Trie, Map<String, Integer>> batches = new LinkedHashMap<Trie, Map<String, Integer>>();
+        for (String courseTitle : checked.getCourseTitles()) {
+            Trie course = courses.get(courseTitle);
+            Map<String, Integer> batch = new HashMap<String, Integer>();
+            for (Command command : checked.getCommands(courseTitle)) {
+                try {
+                    stage(course, batch, command);
+                } catch (CommandException ex) {
+                    throw new CommandException(
+                            "the transaction has been aborted, " + command.getInput() + ": " + ex.getMessage());
                 }
             }
+            batches.put(course, batch);
         }
+        return batches;
+    }
+
+    /**
+     * Checks a command of a transaction and records the change it makes.
+     *
+     * @param course The course the command refers to, {@code null} if it does not exist.
+     * @param batch The new points by student's name of the previous commands, -1
+     *        for a deleted student.
+     * @param command The 'add', 'modify' or 'delete' command.
+     * @throws CommandException If the command fails.
+     */
+    private void stage(Trie course, Map<String, Integer> batch, Command command) throws CommandException {
+        if (course == null) {
+            throw new CommandException("the course '" + command.getCourseTitle() + "' does not exist.");
+        }
+        String studentName = command.getStudentName();
+        Integer staged = batch.get(studentName);
+        int points = staged == null ? course.credits(studentName) : staged;
+        switch (command.getName()) {
+            case "add":
+                if (points != -1) {
+                    throw new CommandException("The student '" + studentName
+                            + "' already exists, you can't add an already existed student.");
+                }
+                if (!course.accepts(studentName)) { // should never happen
+                    throw new CommandException("unknown error occured.");
+                }
+                break;
+            case "modify":
+                if (points == -1) {
+                    throw new CommandException("the searched student is not existed.");
+                }
+                if (points == command.getPoints()) {
+                    throw new CommandException(
+                            "the points of the student are still the same, please choose different points.");
+                }
+                break;
+            default:
+                if (points == -1) {
+                    throw new CommandException("the searched student is not existed.");
+                }
+                break;
+        }
+        batch.put(studentName, command.getPoints());
     }
 
     /**
      * Creates a new course of study after checking if it's not already existed. An
      * already existed course can't be recreated.
+     *
+     * @param command The 'create' command.
+     * @return The response to the command.
+     * @throws CommandException If the course already exists.
      */
-    private void create() {
-        if (!courseExists(courseTitle)) {
-            Trie newTrie = new Trie(courseTitle);
-            courses.add(newTrie);
-            Terminal.printLine("OK");
-        } else {
-            Terminal.printError("the course '" + courseTitle + "' already exist.");
+    private String create(Command command) throws CommandException {
+        String courseTitle = command.getCourseTitle();
+        if (!courses.create(courseTitle)) {
+            throw new CommandException("the course '" + courseTitle + "' already exist.");
         }
+        return "OK";
     }
 
     /**
      * Clears all the course's data except for its name after checking if it's
      * already existed.
+     *
+     * @param command The 'reset' command.
+     * @return The response to the command.
+     * @throws CommandException If the course does not exist.
      */
-    private void reset() {
-        if (availableCourse()) {
-            courses.remove(this.getCourse(courseTitle));
-            create();
+    private String reset(Command command) throws CommandException {
+        String courseTitle = command.getCourseTitle();
+        if (!courses.reset(courseTitle)) {
+            throw new CommandException("the course '" + courseTitle + "' does not exist.");
         }
+        return "OK";
+    }
+
+    /**
+     * Removes a course of study completely after checking if it's already existed.
+     *
+     * @param command The 'drop' command.
+     * @return The response to the command.
+     * @throws CommandException If the course does not exist.
+     */
+    private String drop(Command command) throws CommandException {
+        String courseTitle = command.getCourseTitle();
+        if (!courses.drop(courseTitle)) {
+            throw new CommandException("the course '" + courseTitle + "' does not exist.");
+        }
+        return "OK";
+    }
+
+    /**
+     * Lists the titles of all courses of study in alphabetical order.
+     *
+     * @return The titles separated by spaces, '#' if there are no courses.
+     */
+    private String courses() {
+        SortedSet<String> titles = courses.titles();
+        if (titles.isEmpty()) {
+            return "#";
+        }
+        return String.join(" ", titles);
+    }
+
+    /**
+     * Merges the sketches of the points of all courses.
+     *
+     * @return The merged sketch.
+     * @throws CommandException If there are no students in any course.
+     */
+    private QuantileSketch mergedSketches() throws CommandException {
+        QuantileSketch points = new QuantileSketch();
+        courses.mergeSketchesInto(points, new DistinctSketch());
+        if (points.getCount() == 0) {
+            throw new CommandException("there are no students in any course.");
+        }
+        return points;
+    }
+
+    /**
+     * Estimates the number of distinct students over all courses, counting a
+     * student who attends several courses once.
+     *
+     * @return The estimated number of students.
+     */
+    private String distinct() {
+        DistinctSketch names = new DistinctSketch();
+        courses.mergeSketchesInto(new QuantileSketch(), names);
+        return String.valueOf(names.estimate());
+    }
+
+    /**
+     * Encodes the merged sketches of all courses, so a router can merge them with
+     * the sketches of other shards (see {@link ShardRouter}).
+     *
+     * @return The encoded sketch of the points and the encoded sketch of the
+     *         student names, separated by a semicolon.
+     */
+    private String sketch() {
+        QuantileSketch points = new QuantileSketch();
+        DistinctSketch names = new DistinctSketch();
+        courses.mergeSketchesInto(points, names);
+        return points + ";" + names;
     }
 
     /**
@@ -117,25 +655,26 @@ public class MarksManagement {
      * It performs the add command after checking if the wanted course exists and if
      * the added student or their points are the same. An 'add' command can't be
      * used for re-adding a student or their points.
+     *
+     * @param command The 'add' command.
+     * @return The response to the command.
+     * @throws CommandException If the course does not exist or the student already exists.
      */
-    private void add() {
-        if (availableCourse()) {
-            if (!this.getCourse(courseTitle).has(studentName)) {
-                if (this.getCourse(courseTitle).credits(studentName) != points) {
-                    if (this.getCourse(courseTitle).add(studentName, points)) {
-                        Terminal.printLine("OK");
-                    } else { // should never happen
-                        Terminal.printError("unknown error occured.");
-                    }
-                } else {
-                    Terminal.printError("you can't change the points of a student using add command,"
-                            + " please use modify command to do that.");
-                }
-            } else {
-                Terminal.printError(
-                        "The student '" + studentName + "' already exists, you can't add an already existed student.");
-            }
+    private String add(Command command) throws CommandException {
+        Trie course = availableCourse(command);
+        String studentName = command.getStudentName();
+        if (course.has(studentName)) {
+            throw new CommandException(
+                    "The student '" + studentName + "' already exists, you can't add an already existed student.");
+        }
+        if (course.credits(studentName) == command.getPoints()) {
+            throw new CommandException("you can't change the points of a student using add command,"
+                    + " please use modify command to do that.");
+        }
+        if (!course.add(studentName, command.getPoints())) { // should never happen
+            throw new CommandException("unknown error occured.");
         }
+        return "OK";
     }
 
     /**
@@ -143,196 +682,213 @@ public class MarksManagement {
      * student's points in a particular course of study.
      * It performs that after checking if the course and the student exist and
      * whether the added points are the same as the previous ones.
+     *
+     * @param command The 'modify' command.
+     * @return The response to the command.
+     * @throws CommandException If the course or the student does not exist or the points are the same.
      */
-    private void modify() {
-        if (availableCourse() && availableStudent()) {
-            if (this.getCourse(courseTitle).credits(studentName) != points) {
-                if (this.getCourse(courseTitle).modify(studentName, points)) {
-                    Terminal.printLine("OK");
-                } else { // should never happen
-                    Terminal.printError("unknown error occured.");
-                }
-            } else {
-                Terminal.printError("the points of the student are still the same, please choose different points.");
-            }
+    private String modify(Command command) throws CommandException {
+        Trie course = availableStudent(command);
+        String studentName = command.getStudentName();
+        if (course.credits(studentName) == command.getPoints()) {
+            throw new CommandException("the points of the student are still the same, please choose different points.");
+        }
+        if (!course.modify(studentName, command.getPoints())) { // should never happen
+            throw new CommandException("unknown error occured.");
         }
+        return "OK";
     }
 
     /**
      * Performs the 'delete' command from the class {@code Trie} to remove a student
      * from a particular course of study.
      * It performs that after checking if the course and the student exist.
+     *
+     * @param command The 'delete' command.
+     * @return The response to the command.
+     * @throws CommandException If the course or the student does not exist.
      */
-    private void delete() {
-        for (Trie course : courses) {
-            if (course.getCourseName().equals(courseTitle)) {
-                if (course.has(studentName)) {
-                    course.delete(studentName);
-                    Terminal.printLine("OK");
-                } else {
-                    Terminal.printError("the searched student is not existed.");
-                    break;
-                }
-            } else {
-                Terminal.printError("the searched course is not existed.");
-                break;
-            }
-        }
+    private String delete(Command command) throws CommandException {
+        availableStudent(command).delete(command.getStudentName());
+        return "OK";
     }
 
     /**
      * Performs the 'credits' command from the class {@code Trie} to get a student's
-     * points from a particular course of study and then prints it.
+     * points from a particular course of study.
      * It performs that after checking if the course and the student exist.
+     *
+     * @param command The 'credits' command.
+     * @return The points of the student.
+     * @throws CommandException If the course or the student does not exist.
      */
-    private void credits() {
-        if (availableCourse() && availableStudent()) {
-            Terminal.printLine(this.getCourse(courseTitle).credits(studentName));
-        }
+    private String credits(Command command) throws CommandException {
+        return String.valueOf(availableStudent(command).credits(command.getStudentName()));
     }
 
     /**
      * Performs the 'print' command from the class {@code Trie} to print students'
      * names and their points in a particular course of study after checking that
      * wanted course exists and has a student at least.
+     *
+     * @param command The 'print' command.
+     * @return The summary of the course.
+     * @throws CommandException If the course does not exist.
      */
-    private void print() {
-        if (availableCourse()) {
-            if (this.getCourse(courseTitle).hasStudents()) {
-                Terminal.printLine(this.getCourse(courseTitle).print());
-            } else {
-                Terminal.printLine("#");
-            }
+    private String print(Command command) throws CommandException {
+        Trie course = availableCourse(command);
+        if (course.hasStudents()) {
+            return course.print();
         }
+        return "#";
     }
 
     /**
      * Performs the 'average' command from the class {@code Trie} to get the average
-     * value of students' points in a particular course of study then prints it
-     * after checking that wanted course exists and has a student at least.
+     * value of students' points in a particular course of study after checking that
+     * wanted course exists and has a student at least.
+     *
+     * @param command The 'average' command.
+     * @return The average value of the points.
+     * @throws CommandException If the course does not exist or has no students.
      */
-    private void average() {
-        if (availableCourse() && hasStudents()) {
-            Terminal.printLine(this.getCourse(courseTitle).average());
-        }
+    private String average(Command command) throws CommandException {
+        return String.valueOf(hasStudents(command).average());
     }
 
     /**
      * Performs the 'median' command from the class {@code Trie} to get the median
      * value (central value) of students' points in a particular course of study
-     * then prints it after checking that wanted course exists and has a student at
-     * least.
+     * after checking that wanted course exists and has a student at least.
+     *
+     * @param command The 'median' command.
+     * @return The median value of the points.
+     * @throws CommandException If the course does not exist or has no students.
+     */
+    private String median(Command command) throws CommandException {
+        return String.valueOf(hasStudents(command).median());
+    }
+
+    /**
+     * Lists the students found by the 'top', 'atleast', 'atmost' and 'similar' commands in one
+     * line, each student followed by their points in parentheses.
+     *
+     * @param students The found students.
+     * @return The found students separated by spaces, '#' if there are none.
      */
-    private void median() {
-        if (availableCourse() && hasStudents()) {
-            Terminal.printLine(this.getCourse(courseTitle).median());
+    private String students(List<Student> students) {
+        if (students.isEmpty()) {
+            return "#";
         }
+        StringBuilder line = new StringBuilder();
+        for (Student student : students) {
+            if (line.length() > 0) {
+                line.append(" ");
+            }
+            line.append(student);
+        }
+        return line.toString();
     }
 
     /**
      * Checks if the input command was an empty string (space at least or enter
      * without any explicit command).
-     * 
+     *
+     * @param line The input line.
      * @return {@code true} if there is no command, {@code false} otherwise.
      */
-    private boolean emptyCommand() {
-        if (input.matches("(\\s*)")) {
-            Terminal.printError("your input is invalid, please input one of the valid commands.");
-            return true;
-        }
-        return false;
+    private boolean emptyCommand(String line) {
+        return line.matches("(\\s*)");
     }
 
     /**
      * Checks if a course of study has students at all.
-     * 
-     * @return {@code true} if the course has at least one student, {@code false} otherwise.
+     *
+     * @param command The command referring to the course.
+     * @return The course.
+     * @throws CommandException If the course does not exist or has no students.
      */
-    private boolean hasStudents() {
-        if (!this.getCourse(courseTitle).hasStudents()) {
-            Terminal.printError("there are no students in the wanted course.");
-            return false;
+    private Trie hasStudents(Command command) throws CommandException {
+        Trie course = availableCourse(command);
+        if (!course.hasStudents()) {
+            throw new CommandException("there are no students in the wanted course.");
         }
-        return true;
+        return course;
     }
 
     /**
      * Checks if the a course of study exists.
-     * 
-     * @return {@code true} if the course exists, {@code false} otherwise.
-     */
-    private boolean availableCourse() {
-        if (!courseExists(courseTitle)) {
-            Terminal.printError("the course '" + courseTitle + "' does not exist.");
-            return false;
-        }
-        return true;
-    }
-
-    /**
-     * Checks if a course of study has a student named {@code studentName}.
-     * 
-     * @return {@code true} if student exists, {@code false} otherwise.
+     *
+     * @param command The command referring to the course.
+     * @return The course.
+     * @throws CommandException If the course does not exist.
      */
-    private boolean availableStudent() {
-        if (!this.getCourse(courseTitle).has(studentName)) {
-            Terminal.printError("the searched student is not existed.");
-            return false;
+    private Trie availableCourse(Command command) throws CommandException {
+        Trie course = courses.get(command.getCourseTitle());
+        if (course == null) {
+            throw new CommandException("the course '" + command.getCourseTitle() + "' does not exist.");
         }
-        return true;
+        return course;
     }
 
     /**
-     * Checks if the course is already existed or not.
-     * 
-     * @param title The name of the course to be checked.
-     * @return {@code true} if the searched course is existed, {@code false} otherwise.
+     * Checks if a course of study has the student the command refers to.
+     *
+     * @param command The command referring to the course and the student.
+     * @return The course.
+     * @throws CommandException If the course or the student does not exist.
      */
-    private boolean courseExists(String title) {
-        for (Trie course : courses) {
-            if (course.getCourseName().equals(title)) {
-                return true;
-            }
+    private Trie availableStudent(Command command) throws CommandException {
+        Trie course = availableCourse(command);
+        if (!course.has(command.getStudentName())) {
+            throw new CommandException("the searched student is not existed.");
         }
-        return false;
+        return course;
     }
 
     /**
      * Checks the validity of the arguments number. Each command has a particular
      * number of arguments.
-     * 
+     *
      * <ul>
-     * <li>'quit' command has no arguments.
-     * <li>'create', 'print', 'average', 'reset' and 'median' commands have only one
-     * argument for each.
-     * <li>'credits' and 'delete' commands have two commands for each.
-     * <li>'add' and 'modify' commands have three commands for each.
+     * <li>'quit', 'begin', 'commit', 'prepare', 'abort', 'courses', 'lag',
+     * 'distinct' and 'sketch' commands have no arguments.
+     * <li>'create', 'print', 'average', 'reset', 'drop', 'median' and 'percentile'
+     * commands have only one argument for each.
+     * <li>'credits', 'delete', 'top', 'atleast' and 'atmost' commands have two
+     * commands for each.
+     * <li>'add', 'modify' and 'similar' commands have three commands for each.
      * </ul>
-     * 
+     *
      * @param command The entered command.
      * @param args The arguments of the entered command.
      * @return {@code true} if the input command has valid number of arguments, {@code false} otherwise.
      */
-    private boolean validArgumentsNumber(String command, String[] args) {
-        if (command.equals("quit")) {
+    private boolean validArgumentsNumber(Command command, String[] args) {
+        String name = command.getName();
+        if (name.equals("quit") || name.equals("begin") || name.equals("commit") || name.equals("prepare")
+                || name.equals("abort") || name.equals("courses") || name.equals("lag")
+                || name.equals("distinct") || name.equals("sketch")) {
             if (args.length != 0) {
-                Terminal.printError("quit command does not require any arguments.");
+                command.reject(name + " command does not require any arguments.");
                 return false;
             }
-        } else if (command.equals("create") || command.equals("print") || command.equals("average")
-                || command.equals("reset") || command.equals("median")) {
+        } else if (name.equals("create") || name.equals("print") || name.equals("average")
+                || name.equals("reset") || name.equals("drop") || name.equals("median")
+                || name.equals("percentile")) {
             if (args.length != 1) {
-                Terminal.printError(command + " command requires one argument.");
+                command.reject(name + " command requires one argument.");
                 return false;
             }
-        } else if (command.equals("credits") || command.equals("delete")) {
+        } else if (name.equals("credits") || name.equals("delete") || name.equals("top")
+                || name.equals("atleast") || name.equals("atmost")) {
             if (args.length != 2) {
-                Terminal.printError(command + " command requires two arguments in particular.");
+                command.reject(name + " command requires two arguments in particular.");
                 return false;
             }
-        } else if (command.equals("add") || command.equals("modify")) {
+        } else if (name.equals("add") || name.equals("modify") || name.equals("similar")) {
             if (args.length != 3) {
-                Terminal.printError(command + " command requires three arguments in particular.");
+                command.reject(name + " command requires three arguments in particular.");
                 return false;
             }
         }
@@ -342,36 +898,37 @@ public class MarksManagement {
     /**
      * Checks the validity of the entered course title. A title of a course is valid
      * only if it's consisted of Latin small letters.
-     * 
-     * @param courseTitle The course title to be checked.
+     *
+     * @param command The command the course title belongs to.
+     * @param title The course title to be checked.
      * @return {@code true} if the input course title is valid, {@code false} otherwise.
      */
-    private boolean validCourseTitle(String title) {
+    private boolean validCourseTitle(Command command, String title) {
         if (title.matches("[a-z]+")) {
-            courseTitle = title;
+            command.setCourseTitle(title);
             return true;
         } else {
-            Terminal.printError("invalid course title: ".concat(title));
-            courseTitle = "";
+            command.reject("invalid course title: ".concat(title));
             return false;
         }
     }
 
     /**
      * Checks the validity of the entered student name. A name of a student is valid
-     * only if it's consisted of five letters. All the letters must be in small
-     * letter form. And the first letter must be 'u'.
+     * only if it matches the student name format of this marks manager. By default
+     * it must consist of five letters. All the letters must be in small letter form.
+     * And the first letter must be 'u'.
      *
+     * @param command The command the student name belongs to.
      * @param studentName The student name to be checked.
      * @return {@code true} if the input student name is valid, {@code false} otherwise.
      */
-    private boolean validStudentName(String studentName) {
-        if (studentName.matches("u{1}[a-z]{4}")) {
-            this.studentName = studentName;
+    private boolean validStudentName(Command command, String studentName) {
+        if (studentNameFormat.matcher(studentName).matches()) {
+            command.setStudentName(studentName);
             return true;
         } else {
-            Terminal.printError("invalid student name: ".concat(studentName));
-            this.studentName = "";
+            command.reject("invalid student name: ".concat(studentName));
             return false;
         }
     }
@@ -381,116 +938,158 @@ public class MarksManagement {
      * they are positive integers. And points must consist of at least one positive
      * integer.
      *
+     * @param command The command the points belong to.
      * @param pointsAsString The input points to be checked.
      * @return {@code true} if the points are valid, {@code false} otherwise.
      */
-    private boolean validPoints(String pointsAsString) {
+    private boolean validPoints(Command command, String pointsAsString) {
         if (!pointsAsString.matches("([0-9]+)")) {
-            Terminal.printError("points must be a non-negative integer: ".concat(pointsAsString));
-            this.points = -1;
+            command.reject("points must be a non-negative integer: ".concat(pointsAsString));
             return false;
         } else {
             try {
                 int tmp = Integer.parseInt(pointsAsString);
                 if (tmp < 0) {
-                    Terminal.printError("points must be a non-negative integer: ".concat(pointsAsString));
-
-                    this.points = -1;
+                    command.reject("points must be a non-negative integer: ".concat(pointsAsString));
                     return false;
                 } else {
-                    this.points = tmp;
+                    command.setPoints(tmp);
                 }
             } catch (NumberFormatException ex) {
-                Terminal.printError("points must be a non-negative integer: ".concat(pointsAsString));
-                this.points = -1;
+                command.reject("points must be a non-negative integer: ".concat(pointsAsString));
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Checks the validity of the entered number of students. It is only then valid
+     * when it is a positive integer.
+     *
+     * @param command The command the number belongs to.
+     * @param countAsString The input number to be checked.
+     * @return {@code true} if the number is valid, {@code false} otherwise.
+     */
+    private boolean validCount(Command command, String countAsString) {
+        try {
+            if (countAsString.matches("([0-9]+)") && Integer.parseInt(countAsString) > 0) {
+                command.setCount(Integer.parseInt(countAsString));
+                return true;
+            }
+        } catch (NumberFormatException ex) {
+            // handled below like any other invalid number
+        }
+        command.reject("the number of students must be a positive integer: ".concat(countAsString));
+        return false;
+    }
+
+    /**
+     * Checks the validity of the entered edit distance. It is only then valid when
+     * it is a non-negative integer.
+     *
+     * @param command The command the distance belongs to.
+     * @param distanceAsString The input distance to be checked.
+     * @return {@code true} if the distance is valid, {@code false} otherwise.
+     */
+    private boolean validDistance(Command command, String distanceAsString) {
+        try {
+            if (distanceAsString.matches("([0-9]+)")) {
+                command.setCount(Integer.parseInt(distanceAsString));
+                return true;
+            }
+        } catch (NumberFormatException ex) {
+            // handled below like any other invalid number
+        }
+        command.reject("the distance must be a non-negative integer: ".concat(distanceAsString));
+        return false;
+    }
+
+    /**
+     * Checks the validity of the entered percentile. It is only then valid when it
+     * is an integer between 0 and 100.
+     *
+     * @param command The command the percentile belongs to.
+     * @param percentAsString The input percentile to be checked.
+     * @return {@code true} if the percentile is valid, {@code false} otherwise.
+     */
+    private boolean validPercentile(Command command, String percentAsString) {
+        if (percentAsString.matches("[0-9]{1,3}") && Integer.parseInt(percentAsString) <= 100) {
+            command.setCount(Integer.parseInt(percentAsString));
+            return true;
+        }
+        command.reject("the percentile must be an integer between 0 and 100: ".concat(percentAsString));
+        return false;
+    }
+
     /**
      * Checks completely the validity of the input commands using other methods from
-     * this class.
-     * 
-     * @param command The entered command in whole as a string.
+     * this class. The first failing check rejects the command.
+     *
+     * @param command The entered command.
      * @param args The arguments of the input command.
-     * @return {@code true} if the commands and their arguments are valid, {@code false} otherwise.
      */
-    private boolean validateInput(String command, String[] args) {
-        boolean validationPass = true;
-        switch (command) {
+    private void validateInput(Command command, String[] args) {
+        switch (command.getName()) {
             case "create":
-                if (!validArgumentsNumber(command, args) || !validCourseTitle(args[0])) {
-                    validationPass = false;
-                }
-                break;
             case "reset":
-                if (!validArgumentsNumber(command, args) || !validCourseTitle(args[0])) {
-                    validationPass = false;
+            case "drop":
+            case "print":
+            case "average":
+            case "median":
+                if (validArgumentsNumber(command, args)) {
+                    validCourseTitle(command, args[0]);
                 }
                 break;
             case "add":
-                if (!validArgumentsNumber(command, args) || !validCourseTitle(args[0]) || !validStudentName(args[1])
-                        || !validPoints(args[2])) {
-                    validationPass = false;
-                }
-                break;
             case "modify":
-                if (!validArgumentsNumber(command, args) || !validCourseTitle(args[0]) || !validStudentName(args[1])
-                        || !this.validPoints(args[2])) {
-                    validationPass = false;
+                if (validArgumentsNumber(command, args) && validCourseTitle(command, args[0])
+                        && validStudentName(command, args[1])) {
+                    validPoints(command, args[2]);
                 }
                 break;
             case "delete":
-                if (!validArgumentsNumber(command, args) || !validCourseTitle(args[0]) || !validStudentName(args[1])) {
-                    validationPass = false;
+            case "credits":
+                if (validArgumentsNumber(command, args) && validCourseTitle(command, args[0])) {
+                    validStudentName(command, args[1]);
                 }
                 break;
-            case "credits":
-                if (!validArgumentsNumber(command, args) || !validCourseTitle(args[0]) || !validStudentName(args[1])) {
-                    validationPass = false;
+            case "top":
+                if (validArgumentsNumber(command, args) && validCourseTitle(command, args[0])) {
+                    validCount(command, args[1]);
                 }
                 break;
-            case "print":
-                if (!validArgumentsNumber(command, args) || !validCourseTitle(args[0])) {
-                    validationPass = false;
+            case "atleast":
+            case "atmost":
+                if (validArgumentsNumber(command, args) && validCourseTitle(command, args[0])) {
+                    validPoints(command, args[1]);
                 }
                 break;
-            case "average":
-                if (!validArgumentsNumber(command, args) || !validCourseTitle(args[0])) {
-                    validationPass = false;
+            case "similar":
+                if (validArgumentsNumber(command, args) && validCourseTitle(command, args[0])) {
+                    command.setStudentName(args[1]);
+                    validDistance(command, args[2]);
                 }
                 break;
-            case "median":
-                if (!validArgumentsNumber(command, args) || !validCourseTitle(args[0])) {
-                    validationPass = false;
+            case "percentile":
+                if (validArgumentsNumber(command, args)) {
+                    validPercentile(command, args[0]);
                 }
                 break;
             case "quit":
-                if (!validArgumentsNumber(command, args)) {
-                    validationPass = false;
-                }
+            case "begin":
+            case "commit":
+            case "prepare":
+            case "abort":
+            case "courses":
+            case "lag":
+            case "distinct":
+            case "sketch":
+                validArgumentsNumber(command, args);
                 break;
             default:
-                Terminal.printError("invalid command: ".concat(input));
-                validationPass = false;
+                command.reject("invalid command: ".concat(command.getInput()));
                 break;
         }
-        return validationPass;
-    }
-
-    /**
-     * @param title The name of the course to be gotten.
-     * 
-     * @return The wanted course.
-     */
-    private Trie getCourse(String title) {
-        for (Trie course : courses) {
-            if (course.getCourseName().equals(title)) {
-                return course;
-            }
-        }
-        return null;
     }
-}
\ No newline at end of file
+}
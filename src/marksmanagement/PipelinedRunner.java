@@ -0,0 +1,255 @@
+package marksmanagement;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import edu.kit.informatik.Terminal;
+
+/**
+ * Runs a marks manager as a pipeline of three stages that are connected by
+ * bounded ring buffers:
+ * <ol>
+ * <li>The reader reads and parses the input lines on the calling thread. The
+ * lines can also be submitted one by one, e.g. by a {@link WorkloadReplayer}.
+ * <li>The executors execute the commands. Every course is assigned to one of a
+ * fixed number of executor lanes by its title, so the commands of a course are
+ * executed in their input order while different courses proceed in parallel.
+ * <li>The writer prints the responses in the order of the input lines.
+ * </ol>
+ * Commands of a transaction (see {@link Transaction}) are buffered by the
+ * reader. Before a 'commit' or 'prepare' command, and before the commands that
+ * read all courses, the reader waits until the executors have executed all
+ * previous commands, and then executes the command itself.
+ * <p>
+ * The output is exactly the same as the one of {@link MarksManagement#run()}.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public class PipelinedRunner {
+    private static final List<String> ACROSS_COURSES = Arrays.asList("commit", "prepare", "courses", "percentile",
+            "distinct", "sketch");
+
+    private final MarksManagement mgmt;
+    private final BlockingQueue<CompletableFuture<String>> responses;
+    private final Lane[] lanes;
+    private final Thread[] executors;
+    private Thread writer;
+    private boolean running = true;
+
+    /**
+     * Creates a new pipelined runner.
+     *
+     * @param mgmt The marks manager executing the commands.
+     * @param laneCount The number of executor lanes.
+     * @param bufferSize The capacity of every ring buffer between the stages.
+     */
+    public PipelinedRunner(MarksManagement mgmt, int laneCount, int bufferSize) {
+        this.mgmt = mgmt;
+        this.responses = new ArrayBlockingQueue<CompletableFuture<String>>(bufferSize);
+        this.lanes = new Lane[laneCount];
+        this.executors = new Thread[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(bufferSize);
+        }
+    }
+
+    /**
+     * Runs the pipeline until the 'quit' command or the end of the input has been
+     * read and all responses have been printed.
+     */
+    public void run() {
+        start(Terminal::printLine);
+        try {
+            while (running) {
+                submit(Terminal.readLine());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // the other stages wait for their end even if the reader fails
+            finish();
+        }
+    }
+
+    /**
+     * Starts the executor and the writer stage.
+     *
+     * @param output Receives the responses in the order of their input lines,
+     *        except for missing ones, on the writer thread.
+     */
+    public void start(Consumer<String> output) {
+        writer = new Thread(() -> write(output), "writer");
+        writer.start();
+        for (int i = 0; i < lanes.length; i++) {
+            executors[i] = new Thread(lanes[i], "executor-" + i);
+            executors[i].start();
+        }
+    }
+
+    /**
+     * The reader stage: Parses a line and hands it to the executor lane of its
+     * course. Commands that don't refer to a course and the commands of a
+     * transaction are answered right away. The end of the input is handled like
+     * the 'quit' command, which stops the pipeline from accepting more lines.
+     *
+     * @param line The input line, {@code null} if the end of the input has been reached.
+     * @return The response to the line, completed with {@code null} if there is none.
+     * @throws InterruptedException If the thread is interrupted while waiting for a buffer.
+     */
+    public CompletableFuture<String> submit(String line) throws InterruptedException {
+        Command command = mgmt.parse(line);
+        CompletableFuture<String> response = new CompletableFuture<String>();
+        responses.put(response);
+        if (command.isValid() && command.getName().equals("quit")) {
+            running = false;
+            response.complete(null);
+            return response;
+        }
+        try {
+            if (command.isValid() && ACROSS_COURSES.contains(command.getName())) {
+                drain();
+            }
+            if (mgmt.isBuffered(command)) {
+                response.complete(mgmt.buffer(command));
+            } else if (!command.isValid() || command.getCourseTitle() == null) {
+                response.complete(mgmt.execute(command));
+            } else {
+                Lane lane = lanes[laneOf(command.getCourseTitle())];
+                lane.tasks.put(new Task(command, response));
+                lane.last = response;
+            }
+        } catch (RuntimeException ex) { // should never happen
+            // the writer waits for every response in the buffer
+            response.complete("Error, unknown error occured.");
+            throw ex;
+        }
+        return response;
+    }
+
+    /**
+     * Checks if the pipeline still accepts lines, that is no 'quit' command has
+     * been submitted yet.
+     *
+     * @return {@code true} if the pipeline is running, {@code false} otherwise.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Waits until all submitted commands have been executed and their responses
+     * have been written, and stops the executor and the writer stage.
+     */
+    public void finish() {
+        try {
+            for (Lane lane : lanes) {
+                lane.tasks.put(Task.END);
+            }
+            responses.put(Task.END.response);
+            for (Thread executor : executors) {
+                executor.join();
+            }
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until the executors have executed all commands handed to them.
+     */
+    private void drain() {
+        for (Lane lane : lanes) {
+            if (lane.last != null) {
+                lane.last.join();
+            }
+        }
+    }
+
+    /**
+     * The writer stage: Writes the responses in the order of their input lines.
+     *
+     * @param output Receives the responses.
+     */
+    private void write(Consumer<String> output) {
+        try {
+            while (true) {
+                CompletableFuture<String> response = responses.take();
+                if (response == Task.END.response) {
+                    return;
+                }
+                String line = response.get();
+                if (line != null) {
+                    output.accept(line);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) { // should never happen
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * @param courseTitle The title of a course.
+     * @return The index of the executor lane the course is assigned to.
+     */
+    private int laneOf(String courseTitle) {
+        return Math.floorMod(courseTitle.hashCode(), lanes.length);
+    }
+
+    /**
+     * A command waiting for its execution together with the response it is going
+     * to complete.
+     */
+    private static final class Task {
+        private static final Task END = new Task(null, new CompletableFuture<String>());
+
+        private final Command command;
+        private final CompletableFuture<String> response;
+
+        private Task(Command command, CompletableFuture<String> response) {
+            this.command = command;
+            this.response = response;
+        }
+    }
+
+    /**
+     * An executor lane executing the commands of its courses one after another.
+     */
+    private final class Lane implements Runnable {
+        private final BlockingQueue<Task> tasks;
+        /**
+         * The response of the last command handed to the lane, only used by the reader.
+         */
+        private CompletableFuture<String> last;
+
+        private Lane(int bufferSize) {
+            this.tasks = new ArrayBlockingQueue<Task>(bufferSize);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Task task = tasks.take();
+                    if (task == Task.END) {
+                        return;
+                    }
+                    try {
+                        task.response.complete(mgmt.execute(task.command));
+                    } catch (RuntimeException ex) { // should never happen
+                        task.response.complete("Error, unknown error occured.");
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package marksmanagement;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The follower side of the replication: Keeps the courses of a follower up to
+ * date with the log of a leader (see {@link ReplicationServer}).
+ * <p>
+ * The lines of the leader are applied in their order by a marks manager of their
+ * own, which shares the courses with the marks manager answering the reads of
+ * the follower. If the connection is lost, the replica reconnects and continues
+ * after the last line it has applied.
+ * <p>
+ * The staleness of the follower is the time since the leader sent the last
+ * heartbeat the follower has reached. Since a heartbeat follows all lines that
+ * had been appended when it was sent, the courses of the follower are at most
+ * that old. While a snapshot is applied, the courses are in a state the leader
+ * never had, so the follower rejects reads until the next heartbeat. The leader
+ * and the follower are expected to run on the same machine, so they share their
+ * clock.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public class Replica {
+    private static final long RECONNECT_MILLIS = 500;
+
+    private final MarksManagement applier;
+    private final String leader;
+    private final long maxStalenessMillis;
+    private volatile long applied;
+    private volatile long lastHeartbeat;
+
+    /**
+     * Creates a new replica.
+     *
+     * @param applier The marks manager applying the lines of the leader.
+     * @param leader The address of the leader, a host and a port like {@code localhost:7001}.
+     * @param maxStalenessMillis The maximal staleness in milliseconds reads are answered with.
+     */
+    public Replica(MarksManagement applier, String leader, long maxStalenessMillis) {
+        this.applier = applier;
+        this.leader = leader;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.lastHeartbeat = -1;
+    }
+
+    /**
+     * Starts following the leader in the background.
+     */
+    public void start() {
+        Thread follower = new Thread(this::follow, "replica");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    /**
+     * Checks if the follower is fresh enough to answer reads.
+     *
+     * @throws CommandException If the staleness exceeds the maximal staleness.
+     */
+    void checkStaleness() throws CommandException {
+        long staleness = getStalenessMillis();
+        if (staleness > maxStalenessMillis) {
+            throw new CommandException(staleness == Long.MAX_VALUE ? "the follower has not reached the leader yet."
+                    : "the follower is " + staleness + " ms behind the leader.");
+        }
+    }
+
+    /**
+     * @return The sequence number of the last line applied from the leader.
+     */
+    long getApplied() {
+        return applied;
+    }
+
+    /**
+     * @return The time since the leader sent the last heartbeat that has been
+     *         reached in milliseconds, {@link Long#MAX_VALUE} if there has been none.
+     */
+    long getStalenessMillis() {
+        long heartbeat = lastHeartbeat;
+        if (heartbeat == -1) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, System.currentTimeMillis() - heartbeat);
+    }
+
+    /**
+     * Follows the leader, reconnecting whenever the connection is lost.
+     */
+    private void follow() {
+        int separator = leader.lastIndexOf(':');
+        while (true) {
+            try (Socket socket = new Socket(leader.substring(0, separator),
+                    Integer.parseInt(leader.substring(separator + 1)))) {
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+                out.println("from " + applied);
+                out.flush();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    receive(line, in);
+                }
+            } catch (IOException ex) {
+                // handled below like a closed connection
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handles one line of the leader.
+     *
+     * @param line The line.
+     * @param in The stream of the leader, to read the commands of a snapshot from.
+     * @throws IOException If the connection is lost.
+     */
+    private void receive(String line, BufferedReader in) throws IOException {
+        String[] parts = line.split(" ", 3);
+        if (parts[0].equals("heartbeat")) {
+            lastHeartbeat = Long.parseLong(parts[2]);
+        } else if (parts[0].equals("snapshot")) {
+            // the courses are incomplete until the snapshot has been applied, so reads are rejected until
+            // the next heartbeat
+            lastHeartbeat = -1;
+            applier.process("abort");
+            String titles = applier.process("courses");
+            if (!titles.equals("#")) {
+                for (String title : titles.split(" ")) {
+                    applier.process("drop " + title);
+                }
+            }
+            int count = Integer.parseInt(parts[2]);
+            for (int i = 0; i < count; i++) {
+                String command = in.readLine();
+                if (command == null) {
+                    throw new IOException("connection closed during a snapshot");
+                }
+                applier.process(command);
+            }
+            applied = Long.parseLong(parts[1]);
+        } else {
+            applier.process(line.substring(parts[0].length() + 1));
+            applied = Long.parseLong(parts[0]);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package marksmanagement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The ordered log of the command lines that changed the courses of a leader
+ * (see {@link ReplicationServer}). Replaying the lines in their order on an
+ * empty marks manager results in the same courses.
+ * <p>
+ * Every line has a sequence number, following the base sequence number of the
+ * log. The base covers the courses the leader already had when the log was
+ * created, e.g. the ones it found in its course directory, which no line
+ * records. Only the latest lines are retained; a follower that is further
+ * behind, or behind the base, has to catch up from a snapshot.
+ * <p>
+ * A change and the line it appends are made under the shared side of a lock, so
+ * the changes of different courses can still be made concurrently. A snapshot is
+ * taken under the exclusive side, so it contains exactly the changes of the
+ * lines up to its sequence number.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public class ReplicationLog {
+    private static final int RETAINED = 1 << 16;
+
+    private final ReentrantReadWriteLock lock;
+    private final String[] lines;
+    private final long base;
+    private long sequence;
+
+    /**
+     * Creates a new empty log for a leader without courses.
+     */
+    public ReplicationLog() {
+        this(0);
+    }
+
+    /**
+     * Creates a new empty log.
+     *
+     * @param base The base sequence number, 1 if the leader already has courses
+     *        that no line records, 0 otherwise.
+     */
+    public ReplicationLog(long base) {
+        this.lock = new ReentrantReadWriteLock();
+        this.lines = new String[RETAINED];
+        this.base = base;
+        this.sequence = base;
+    }
+
+    /**
+     * Starts a change. Snapshots wait until it has ended.
+     */
+    void beginChange() {
+        lock.readLock().lock();
+    }
+
+    /**
+     * Ends a change started by {@link #beginChange()}.
+     */
+    void endChange() {
+        lock.readLock().unlock();
+    }
+
+    /**
+     * Starts taking a snapshot. New changes wait until it has ended.
+     */
+    void beginSnapshot() {
+        lock.writeLock().lock();
+    }
+
+    /**
+     * Ends taking a snapshot started by {@link #beginSnapshot()}.
+     */
+    void endSnapshot() {
+        lock.writeLock().unlock();
+    }
+
+    /**
+     * Appends the lines of a change and wakes up the waiting followers.
+     *
+     * @param change The lines of the change.
+     */
+    synchronized void append(List<String> change) {
+        for (String line : change) {
+            sequence++;
+            lines[(int) (sequence % RETAINED)] = line;
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return The sequence number of the latest line, the base if there is none.
+     */
+    synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the lines following a sequence number, waiting for new lines if there
+     * are none yet.
+     *
+     * @param after The sequence number of the last line already known.
+     * @param timeoutMillis The maximal time to wait for new lines.
+     * @return The following lines, which might be none, {@code null} if some of
+     *         them are not retained anymore or precede the base.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    synchronized List<String> linesAfter(long after, long timeoutMillis) throws InterruptedException {
+        if (after == sequence) {
+            wait(timeoutMillis);
+        }
+        if (after > sequence || after < base || after < sequence - RETAINED) {
+            return null;
+        }
+        List<String> following = new ArrayList<String>();
+        for (long next = after + 1; next <= sequence; next++) {
+            following.add(lines[(int) (next % RETAINED)]);
+        }
+        return following;
+    }
+}
@@ -0,0 +1,169 @@
+package marksmanagement;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import trie.Student;
+
+/**
+ * Streams the {@link ReplicationLog} of a leader to its followers (see
+ * {@link Replica}) over a local socket, which is bound to the loopback address,
+ * so only followers on the same machine can connect.
+ * <p>
+ * A follower connects and sends {@code from <sequence>} with the sequence number
+ * of the last line it has applied. The leader answers with the lines that follow
+ * it, each as {@code <sequence> <command>}, and keeps sending new lines as they
+ * are appended. If the lines the follower needs are not retained anymore, the
+ * leader first sends {@code snapshot <sequence> <count>} followed by the
+ * {@code count} commands that rebuild all courses as of that sequence number.
+ * After every batch of lines, and at least every {@value #HEARTBEAT_MILLIS}
+ * milliseconds, the leader sends {@code heartbeat <sequence> <time>}, which tells
+ * the follower that it has received all lines the leader had appended at that
+ * time, given in milliseconds since the epoch.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public class ReplicationServer {
+    /**
+     * The maximal time between two heartbeats in milliseconds.
+     */
+    static final long HEARTBEAT_MILLIS = 100;
+
+    private final ReplicationLog log;
+    private final CourseManager courses;
+    private final int port;
+
+    /**
+     * Creates a new replication server.
+     *
+     * @param log The log of the leader.
+     * @param courses The courses of the leader.
+     * @param port The port the server listens on.
+     */
+    public ReplicationServer(ReplicationLog log, CourseManager courses, int port) {
+        this.log = log;
+        this.courses = courses;
+        this.port = port;
+    }
+
+    /**
+     * Starts listening for followers in the background.
+     *
+     * @throws UncheckedIOException If the port can't be listened on.
+     */
+    public void start() {
+        ServerSocket server;
+        try {
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the port " + port + " can't be listened on.", ex);
+        }
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket socket = server.accept();
+                    Thread follower = new Thread(() -> serve(socket), "follower-" + socket.getPort());
+                    follower.setDaemon(true);
+                    follower.start();
+                } catch (IOException ex) {
+                    return;
+                }
+            }
+        }, "replication");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Streams the log to one follower until the connection is lost.
+     *
+     * @param socket The connection to the follower.
+     */
+    private void serve(Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+            String request = in.readLine();
+            if (request == null || !request.matches("from [0-9]+")) {
+                return;
+            }
+            long sent = Long.parseLong(request.substring("from ".length()));
+            while (!out.checkError()) {
+                // taken before the lines are fetched, so every line appended until then is sent
+                long time = System.currentTimeMillis();
+                List<String> lines = log.linesAfter(sent, HEARTBEAT_MILLIS);
+                if (lines == null) {
+                    sent = sendSnapshot(out);
+                    continue;
+                }
+                for (String line : lines) {
+                    out.println(++sent + " " + line);
+                }
+                out.println("heartbeat " + sent + " " + time);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // the follower is gone, it reconnects by itself
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends a snapshot of all courses.
+     * <p>
+     * It does it by freezing the courses while no change is made (see
+     * {@link CourseManager#freeze()}), which neither loads nor writes a course, and
+     * then sending a 'create' command for every course and its students as one
+     * transaction of 'add' commands. The students of the courses on disk are read
+     * from their frozen files after the changes have been resumed.
+     *
+     * @param out The stream to the follower.
+     * @return The sequence number of the snapshot.
+     */
+    private long sendSnapshot(PrintWriter out) {
+        FrozenCourses frozen;
+        long sequence;
+        log.beginSnapshot();
+        try {
+            sequence = log.getSequence();
+            frozen = courses.freeze();
+        } finally {
+            log.endSnapshot();
+        }
+        List<String> commands = new ArrayList<String>();
+        try {
+            for (String title : frozen.titles()) {
+                commands.add("create " + title);
+                List<Student> students = frozen.students(title);
+                if (!students.isEmpty()) {
+                    commands.add("begin");
+                    for (Student student : students) {
+                        commands.add("add " + title + ";" + student.getName() + ";" + student.getPoints());
+                    }
+                    commands.add("commit");
+                }
+            }
+        } finally {
+            frozen.release();
+        }
+        out.println("snapshot " + sequence + " " + commands.size());
+        for (String command : commands) {
+            out.println(command);
+        }
+        return sequence;
+    }
+}
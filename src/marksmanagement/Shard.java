@@ -0,0 +1,172 @@
+package marksmanagement;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The connection of a {@link ShardRouter} to a {@link ShardWorker}. Every line
+ * sent to the worker is answered by exactly one line, except for the 'quit'
+ * command.
+ * <p>
+ * The commands are pipelined: they are sent without waiting for the responses
+ * to the previous ones, and a receiver thread completes their responses in the
+ * order they arrive, which is the order the commands have been sent in.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+class Shard {
+    private final String address;
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final ArrayDeque<CompletableFuture<String>> pending;
+    private boolean closed;
+
+    /**
+     * Connects to a worker.
+     *
+     * @param address The address of the worker, a host and a port like {@code localhost:7001}.
+     * @throws UncheckedIOException If the worker can't be reached.
+     */
+    Shard(String address) {
+        this.address = address;
+        this.pending = new ArrayDeque<CompletableFuture<String>>();
+        int separator = address.lastIndexOf(':');
+        try {
+            this.socket = new Socket(address.substring(0, separator),
+                    Integer.parseInt(address.substring(separator + 1)));
+            socket.setTcpNoDelay(true);
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the shard " + address + " is not reachable.", ex);
+        }
+        Thread receiver = new Thread(this::receive, "shard-" + address);
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Sends a command to the worker without waiting for its response.
+     *
+     * @param line The command, which must not be 'quit'.
+     * @return The response of the worker, which fails with an
+     *         {@link UncheckedIOException} if the connection is lost.
+     */
+    synchronized CompletableFuture<String> send(String line) {
+        CompletableFuture<String> response = new CompletableFuture<String>();
+        if (closed) {
+            response.completeExceptionally(lost());
+            return response;
+        }
+        pending.add(response);
+        out.println(line);
+        out.flush();
+        return response;
+    }
+
+    /**
+     * Sends a command to the worker and waits for its response.
+     *
+     * @param line The command, which must not be 'quit'.
+     * @return The response of the worker.
+     * @throws UncheckedIOException If the connection to the worker is lost.
+     */
+    String request(String line) {
+        try {
+            return send(line).join();
+        } catch (CompletionException ex) {
+            throw (UncheckedIOException) ex.getCause();
+        }
+    }
+
+    /**
+     * Sends the 'quit' command to the worker after the pending commands and closes
+     * the connection once they have been answered.
+     */
+    void quit() {
+        CompletableFuture<String> last;
+        synchronized (this) {
+            last = pending.isEmpty() ? CompletableFuture.completedFuture(null) : pending.peekLast();
+            out.println("quit");
+            out.flush();
+            closed = true;
+        }
+        last.handle((response, ex) -> response).join();
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // the worker is shutting down anyway
+        }
+    }
+
+    /**
+     * Closes the connection without shutting the worker down. The responses that
+     * are still pending fail.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // closed anyway
+        }
+    }
+
+    /**
+     * @return The address of the worker.
+     */
+    String getAddress() {
+        return address;
+    }
+
+    /**
+     * Completes the responses in the order they arrive until the connection is
+     * closed. The responses that are still pending then fail.
+     */
+    private void receive() {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                CompletableFuture<String> response;
+                synchronized (this) {
+                    response = pending.poll();
+                }
+                if (response != null) {
+                    response.complete(line);
+                }
+            }
+        } catch (IOException ex) {
+            // handled below like a closed connection
+        }
+        synchronized (this) {
+            closed = true;
+            for (CompletableFuture<String> response : pending) {
+                response.completeExceptionally(lost());
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * @return The exception reporting that the connection to the worker is lost.
+     */
+    private UncheckedIOException lost() {
+        return new UncheckedIOException("the shard " + address + " is not reachable.",
+                new IOException("connection closed"));
+    }
+}
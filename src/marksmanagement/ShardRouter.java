@@ -0,0 +1,483 @@
+package marksmanagement;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import edu.kit.informatik.Terminal;
+import trie.DistinctSketch;
+import trie.QuantileSketch;
+
+/**
+ * Routes the commands of the terminal to the {@link ShardWorker}s of a sharded
+ * deployment. The courses are partitioned across the workers by a
+ * {@link HashRing} over their titles.
+ * <p>
+ * The router speaks the same protocol as a single marks manager:
+ * <ul>
+ * <li>A command referring to a course is forwarded to the worker of the course.
+ * The commands are pipelined, and the responses are printed in the order of the
+ * input lines by a writer thread.
+ * <li>Commands over all courses, that is 'courses' and 'quit', are scattered to
+ * all workers and their responses are gathered into one.
+ * <li>The statistics over all courses, that is 'percentile', 'distinct' and
+ * 'sketch', are answered by gathering the sketches of all workers and merging
+ * them, which keeps the error bounds of a single marks manager.
+ * <li>The commands of a transaction are buffered by the router and sent to the
+ * worker of their courses on 'commit'. A transaction whose courses belong to
+ * different workers is first checked on all of them by 'prepare', and only
+ * committed on all of them if every check passes, so it is applied completely
+ * or not at all, and fails with the same error, as in a single marks manager.
+ * <li>The router is never a follower, so it rejects 'lag', like every other
+ * command without a course it doesn't know how to spread over the workers.
+ * <li>The router's own command {@code addshard <host>:<port>} adds a worker to
+ * the ring and moves the courses that now belong to it from the other workers.
+ * The ring is only changed after all of them have been copied.
+ * </ul>
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public class ShardRouter {
+    private static final String ERROR_PREFIX = "Error, ";
+    private static final String ADD_SHARD = "addshard ";
+    private static final String NO_STUDENTS = ERROR_PREFIX + "there are no students in the wanted course.";
+
+    private final MarksManagement parser;
+    private final HashRing ring;
+    private final Map<String, Shard> shards;
+    private final BlockingQueue<CompletableFuture<String>> responses;
+    private List<Command> transaction;
+    private boolean isRunning = true;
+
+    /**
+     * Creates a new router and connects it to its workers.
+     *
+     * @param studentNameFormat The regular expression a student name has to match.
+     * @param addresses The addresses of the workers, each a host and a port like {@code localhost:7001}.
+     * @throws UncheckedIOException If a worker can't be reached.
+     */
+    public ShardRouter(String studentNameFormat, List<String> addresses) {
+        this.parser = new MarksManagement(studentNameFormat);
+        this.ring = new HashRing();
+        this.shards = new LinkedHashMap<String, Shard>();
+        this.responses = new ArrayBlockingQueue<CompletableFuture<String>>(1024);
+        for (String address : addresses) {
+            shards.put(address, new Shard(address));
+            ring.add(address);
+        }
+    }
+
+    /**
+     * Runs the router until the 'quit' command or the end of the input has been
+     * read and all responses have been printed.
+     */
+    public void run() {
+        Thread writer = new Thread(this::write, "writer");
+        writer.start();
+        try {
+            while (true) {
+                String line = Terminal.readLine();
+                responses.put(route(line));
+                if (!isRunning) {
+                    break;
+                }
+            }
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Routes one input line.
+     *
+     * @param line The input line, {@code null} if the end of the input has been reached.
+     * @return The response to the line, completed with {@code null} if there is none.
+     */
+    private CompletableFuture<String> route(String line) {
+        try {
+            if (line != null && line.startsWith(ADD_SHARD)) {
+                return CompletableFuture.completedFuture(addShard(line.substring(ADD_SHARD.length())));
+            }
+            Command command = parser.parse(line);
+            if (!command.isValid()) {
+                throw new CommandException(command.getError());
+            }
+            switch (command.getName()) {
+                case "quit":
+                    for (Shard shard : shards.values()) {
+                        shard.quit();
+                    }
+                    isRunning = false;
+                    return CompletableFuture.completedFuture(null);
+                case "courses":
+                    return CompletableFuture.completedFuture(courses());
+                case "percentile":
+                case "distinct":
+                case "sketch":
+                    return CompletableFuture.completedFuture(statistic(command));
+                case "begin":
+                    if (transaction != null) {
+                        throw new CommandException(
+                                "there is already an open transaction, please commit or abort it first.");
+                    }
+                    transaction = new ArrayList<Command>();
+                    return CompletableFuture.completedFuture("OK");
+                case "abort":
+                    closeTransaction();
+                    return CompletableFuture.completedFuture("OK");
+                case "commit":
+                    return commit(closeTransaction());
+                case "add":
+                case "modify":
+                case "delete":
+                    if (transaction != null) {
+                        transaction.add(command);
+                        return CompletableFuture.completedFuture("OK");
+                    }
+                    return shardOf(command.getCourseTitle()).send(command.getInput());
+                case "lag":
+                    throw new CommandException("this is not a follower.");
+                default:
+                    if (command.getCourseTitle() == null) {
+                        throw new CommandException(
+                                "the router does not support the command: ".concat(command.getInput()));
+                    }
+                    return shardOf(command.getCourseTitle()).send(command.getInput());
+            }
+        } catch (CommandException | UncheckedIOException ex) {
+            return CompletableFuture.completedFuture(ERROR_PREFIX + ex.getMessage());
+        }
+    }
+
+    /**
+     * Closes the open transaction.
+     *
+     * @return The commands of the transaction.
+     * @throws CommandException If there is no open transaction.
+     */
+    private List<Command> closeTransaction() throws CommandException {
+        if (transaction == null) {
+            throw new CommandException("there is no open transaction.");
+        }
+        List<Command> closed = transaction;
+        transaction = null;
+        return closed;
+    }
+
+    /**
+     * Sends the commands of a transaction to the workers of their courses, each of
+     * which commits its part as a transaction of its own.
+     * <p>
+     * If the courses belong to several workers, it does it in two phases. First,
+     * the commands of every course are checked on its worker by a transaction
+     * that is prepared and aborted, in the alphabetical order of the courses like
+     * a single marks manager checks them. The router waits for all checks and
+     * sends nothing else meanwhile, so they stay valid until the second phase,
+     * which commits the parts on all workers. If a check fails, nothing is
+     * committed and the error of the first failing course is returned.
+     *
+     * @param commands The commands of the transaction.
+     * @return The response to the 'commit' command.
+     */
+    private CompletableFuture<String> commit(List<Command> commands) {
+        Map<Shard, List<Command>> parts = new LinkedHashMap<Shard, List<Command>>();
+        Map<String, List<Command>> byCourse = new TreeMap<String, List<Command>>();
+        for (Command command : commands) {
+            parts.computeIfAbsent(shardOf(command.getCourseTitle()), shard -> new ArrayList<Command>()).add(command);
+            byCourse.computeIfAbsent(command.getCourseTitle(), title -> new ArrayList<Command>()).add(command);
+        }
+        if (parts.isEmpty()) {
+            return CompletableFuture.completedFuture("OK");
+        }
+        if (parts.size() > 1) {
+            List<CompletableFuture<String>> checks = new ArrayList<CompletableFuture<String>>();
+            for (Map.Entry<String, List<Command>> course : byCourse.entrySet()) {
+                Shard shard = shardOf(course.getKey());
+                shard.send("begin");
+                for (Command command : course.getValue()) {
+                    shard.send(command.getInput());
+                }
+                checks.add(shard.send("prepare"));
+                shard.send("abort");
+            }
+            for (String check : joinAll(checks)) {
+                if (!check.equals("OK")) {
+                    return CompletableFuture.completedFuture(check);
+                }
+            }
+        }
+        List<CompletableFuture<String>> commits = new ArrayList<CompletableFuture<String>>();
+        for (Map.Entry<Shard, List<Command>> part : parts.entrySet()) {
+            Shard shard = part.getKey();
+            shard.send("begin");
+            for (Command command : part.getValue()) {
+                shard.send(command.getInput());
+            }
+            commits.add(shard.send("commit"));
+        }
+        if (commits.size() == 1) {
+            return commits.get(0);
+        }
+        for (String response : joinAll(commits)) {
+            if (!response.equals("OK")) {
+                return CompletableFuture.completedFuture(response);
+            }
+        }
+        return CompletableFuture.completedFuture("OK");
+    }
+
+    /**
+     * Gathers the titles of the courses of all workers.
+     *
+     * @return The titles separated by spaces in alphabetical order, '#' if there are no courses.
+     */
+    private String courses() {
+        SortedSet<String> titles = new TreeSet<String>();
+        for (String shardTitles : gather("courses")) {
+            if (!shardTitles.equals("#")) {
+                for (String title : shardTitles.split(" ")) {
+                    titles.add(title);
+                }
+            }
+        }
+        if (titles.isEmpty()) {
+            return "#";
+        }
+        return String.join(" ", titles);
+    }
+
+    /**
+     * Answers a statistic over all courses from the merged sketches of all workers.
+     *
+     * @param command The 'percentile', 'distinct' or 'sketch' command.
+     * @return The response to the command.
+     * @throws CommandException If a worker fails or there are no students for a percentile.
+     */
+    private String statistic(Command command) throws CommandException {
+        QuantileSketch points = new QuantileSketch();
+        DistinctSketch names = new DistinctSketch();
+        for (String response : gather("sketch")) {
+            if (response.startsWith(ERROR_PREFIX)) {
+                throw new CommandException(response.substring(ERROR_PREFIX.length()));
+            }
+            int separator = response.indexOf(';');
+            points.merge(QuantileSketch.parse(response.substring(0, separator)));
+            names.merge(DistinctSketch.parse(response.substring(separator + 1)));
+        }
+        switch (command.getName()) {
+            case "distinct":
+                return String.valueOf(names.estimate());
+            case "sketch":
+                return points + ";" + names;
+            default:
+                if (points.getCount() == 0) {
+                    throw new CommandException("there are no students in any course.");
+                }
+                return String.valueOf(points.percentile(command.getCount()));
+        }
+    }
+
+    /**
+     * Sends a command to all workers at once and waits for all their responses.
+     *
+     * @param line The command.
+     * @return The responses of the workers.
+     * @throws UncheckedIOException If a worker is not reachable.
+     */
+    private List<String> gather(String line) {
+        List<CompletableFuture<String>> scattered = new ArrayList<CompletableFuture<String>>();
+        for (Shard shard : shards.values()) {
+            scattered.add(shard.send(line));
+        }
+        return joinAll(scattered);
+    }
+
+    /**
+     * Waits for the responses of workers.
+     *
+     * @param pending The pending responses.
+     * @return The responses in the same order.
+     * @throws UncheckedIOException If a worker is not reachable.
+     */
+    private List<String> joinAll(List<CompletableFuture<String>> pending) {
+        List<String> responses = new ArrayList<String>();
+        try {
+            for (CompletableFuture<String> response : pending) {
+                responses.add(response.join());
+            }
+        } catch (CompletionException ex) {
+            throw (UncheckedIOException) ex.getCause();
+        }
+        return responses;
+    }
+
+    /**
+     * Adds a worker to the ring and moves the courses that now belong to it from
+     * the other workers.
+     * <p>
+     * It does it by listing the courses of every other worker and copying each
+     * course whose title hashes to the new worker on the extended ring: its
+     * students are read by 'atleast' with 0 points, the course is created on the
+     * new worker and the students are added to it in one transaction. If a course
+     * can't be copied, the copies are dropped from the new worker and the ring
+     * stays unchanged. Otherwise the worker is added to the ring and the copied
+     * courses are dropped from their old workers. Because every worker answers its
+     * commands in their order, the commands routed before are executed before a
+     * course is copied, and the commands routed afterwards go to the new worker.
+     *
+     * @param address The address of the new worker.
+     * @return The response to the command.
+     * @throws CommandException If the address is invalid or already used, a course
+     *         can't be copied, or a copied course can't be dropped from its old worker.
+     */
+    private String addShard(String address) throws CommandException {
+        if (!address.matches("[^:\\s]+:[0-9]+")) {
+            throw new CommandException("invalid shard address: ".concat(address));
+        }
+        if (shards.containsKey(address)) {
+            throw new CommandException("the shard " + address + " already exists.");
+        }
+        if (transaction != null) {
+            throw new CommandException("a shard can't be added during a transaction.");
+        }
+        Shard added = new Shard(address);
+        HashRing extended = new HashRing();
+        for (String shard : ring.getShards()) {
+            extended.add(shard);
+        }
+        extended.add(address);
+        Map<String, Shard> copied = new TreeMap<String, Shard>();
+        try {
+            for (Shard shard : shards.values()) {
+                String titles = shard.request("courses");
+                if (titles.equals("#")) {
+                    continue;
+                }
+                for (String title : titles.split(" ")) {
+                    if (extended.shardOf(title).equals(address)) {
+                        copy(title, shard, added);
+                        copied.put(title, shard);
+                    }
+                }
+            }
+        } catch (CommandException | UncheckedIOException ex) {
+            for (String title : copied.keySet()) {
+                dropQuietly(added, title);
+            }
+            added.close();
+            throw ex;
+        }
+        shards.put(address, added);
+        ring.add(address);
+        List<String> leftOver = new ArrayList<String>();
+        for (Map.Entry<String, Shard> course : copied.entrySet()) {
+            String title = course.getKey();
+            if (!dropQuietly(course.getValue(), title)) {
+                leftOver.add(title);
+            }
+        }
+        if (!leftOver.isEmpty()) {
+            throw new CommandException("the shard " + address + " has been added, but the moved courses "
+                    + String.join(", ", leftOver) + " could not be dropped from their old shards.");
+        }
+        return "OK";
+    }
+
+    /**
+     * Copies a course from one worker to another. A copy that has been created but
+     * can't be filled is dropped again.
+     *
+     * @param courseTitle The title of the course.
+     * @param from The worker the course is copied from.
+     * @param to The worker the course is copied to.
+     * @throws CommandException If the course can't be read, or created or filled on the new worker.
+     */
+    private void copy(String courseTitle, Shard from, Shard to) throws CommandException {
+        String students = from.request("atleast " + courseTitle + ";0");
+        boolean empty = students.equals(NO_STUDENTS);
+        if (!empty && students.startsWith(ERROR_PREFIX)) {
+            throw new CommandException("the course '" + courseTitle + "' could not be moved: " + students);
+        }
+        expectOk(to.request("create " + courseTitle), courseTitle);
+        if (!empty) {
+            to.send("begin");
+            for (String student : students.split(" ")) {
+                int open = student.lastIndexOf('(');
+                to.send("add " + courseTitle + ";" + student.substring(0, open) + ";"
+                        + student.substring(open + 1, student.length() - 1));
+            }
+            String committed = to.request("commit");
+            if (!committed.equals("OK")) {
+                dropQuietly(to, courseTitle);
+                expectOk(committed, courseTitle);
+            }
+        }
+    }
+
+    /**
+     * Drops a course from a worker without failing.
+     *
+     * @param shard The worker.
+     * @param courseTitle The title of the course.
+     * @return {@code true} if the course has been dropped, {@code false} otherwise.
+     */
+    private boolean dropQuietly(Shard shard, String courseTitle) {
+        try {
+            return shard.request("drop " + courseTitle).equals("OK");
+        } catch (UncheckedIOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @param response The response of a worker while moving a course.
+     * @param courseTitle The title of the moved course.
+     * @throws CommandException If the response is an error.
+     */
+    private void expectOk(String response, String courseTitle) throws CommandException {
+        if (!response.equals("OK")) {
+            throw new CommandException("the course '" + courseTitle + "' could not be moved: " + response);
+        }
+    }
+
+    /**
+     * @param courseTitle The title of a course.
+     * @return The worker the course belongs to.
+     */
+    private Shard shardOf(String courseTitle) {
+        return shards.get(ring.shardOf(courseTitle));
+    }
+
+    /**
+     * The writer: Prints the responses in the order of their input lines.
+     */
+    private void write() {
+        try {
+            while (true) {
+                CompletableFuture<String> response = responses.take();
+                String line;
+                try {
+                    line = response.join();
+                } catch (CompletionException ex) {
+                    line = ERROR_PREFIX + ex.getCause().getMessage();
+                }
+                if (line == null) {
+                    return;
+                }
+                Terminal.printLine(line);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
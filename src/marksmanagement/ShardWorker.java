@@ -0,0 +1,88 @@
+package marksmanagement;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves a marks manager over a local socket as one shard of a sharded
+ * deployment (see {@link ShardRouter}). The socket is bound to the loopback
+ * address, so only processes on the same machine can connect.
+ * <p>
+ * The worker speaks the same line protocol as the terminal: every command line
+ * is answered by one response line, except for the 'quit' command, which shuts
+ * the worker down. Connections are served one after another, so the router that
+ * is connected sees the courses of the worker exclusively. The responses are
+ * only flushed when no further command has arrived yet, so a router pipelining
+ * its commands receives their responses in batches.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public class ShardWorker {
+    private final MarksManagement mgmt;
+    private final int port;
+
+    /**
+     * Creates a new worker.
+     *
+     * @param mgmt The marks manager executing the commands.
+     * @param port The port the worker listens on.
+     */
+    public ShardWorker(MarksManagement mgmt, int port) {
+        this.mgmt = mgmt;
+        this.port = port;
+    }
+
+    /**
+     * Runs the worker until the 'quit' command has been received.
+     *
+     * @throws UncheckedIOException If the port can't be listened on.
+     */
+    public void run() {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            while (mgmt.isRunning()) {
+                try (Socket socket = server.accept()) {
+                    serve(socket);
+                } catch (IOException ex) {
+                    // the connection is lost, wait for the next one
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the port " + port + " can't be listened on.", ex);
+        }
+    }
+
+    /**
+     * Answers the commands of one connection until it is closed or the 'quit'
+     * command has been received.
+     *
+     * @param socket The connection.
+     * @throws IOException If the connection is lost.
+     */
+    private void serve(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+        String line;
+        while ((line = in.readLine()) != null) {
+            String response = mgmt.process(line);
+            if (!mgmt.isRunning()) {
+                break;
+            }
+            out.println(response);
+            if (!in.ready()) {
+                out.flush();
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,49 @@
+package marksmanagement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The 'add', 'modify' and 'delete' commands that have been read between a
+ * 'begin' and a 'commit' command. The commands are grouped by their courses, and
+ * the commands of a course are kept in their input order.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+class Transaction {
+    private final TreeMap<String, List<Command>> commands;
+
+    /**
+     * Creates a new empty transaction.
+     */
+    Transaction() {
+        this.commands = new TreeMap<String, List<Command>>();
+    }
+
+    /**
+     * Adds a command to the transaction.
+     *
+     * @param command The valid 'add', 'modify' or 'delete' command.
+     */
+    void add(Command command) {
+        commands.computeIfAbsent(command.getCourseTitle(), title -> new ArrayList<Command>()).add(command);
+    }
+
+    /**
+     * @return The titles of the courses the commands refer to, in alphabetical order.
+     */
+    Set<String> getCourseTitles() {
+        return commands.keySet();
+    }
+
+    /**
+     * @param courseTitle The title of a course.
+     * @return The commands referring to the course, in their input order.
+     */
+    List<Command> getCommands(String courseTitle) {
+        return commands.get(courseTitle);
+    }
+}
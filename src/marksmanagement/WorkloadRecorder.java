@@ -0,0 +1,103 @@
+package marksmanagement;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import edu.kit.informatik.Terminal;
+
+/**
+ * Runs a marks manager like {@link MarksManagement#run()} and records the
+ * workload into a file, so it can be replayed later by a
+ * {@link WorkloadReplayer}.
+ * <p>
+ * Every input line is recorded as one line of three fields separated by tabs:
+ * the time it has been read in nanoseconds since the start, the input line and
+ * its response, which is empty if there is none. Tabs, line breaks and
+ * backslashes within the fields are escaped by a backslash.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public class WorkloadRecorder {
+    private final MarksManagement mgmt;
+    private final Path file;
+
+    /**
+     * Creates a new recorder.
+     *
+     * @param mgmt The marks manager executing the commands.
+     * @param file The file the workload is recorded into, which is replaced.
+     */
+    public WorkloadRecorder(MarksManagement mgmt, Path file) {
+        this.mgmt = mgmt;
+        this.file = file;
+    }
+
+    /**
+     * Runs the marks manager until the 'quit' command or the end of the input has
+     * been read.
+     *
+     * @throws UncheckedIOException If the file can't be written.
+     */
+    public void run() {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long start = System.nanoTime();
+            while (mgmt.isRunning()) {
+                String line = Terminal.readLine();
+                long time = System.nanoTime() - start;
+                String response = mgmt.process(line);
+                if (line != null) {
+                    writer.write(time + "\t" + escape(line) + "\t" + escape(response == null ? "" : response));
+                    writer.newLine();
+                }
+                if (response != null) {
+                    Terminal.printLine(response);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the workload could not be recorded.", ex);
+        }
+    }
+
+    /**
+     * @param field A field of a record.
+     * @return The field with its tabs, line breaks and backslashes escaped.
+     */
+    static String escape(String field) {
+        return field.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * @param field An escaped field of a record.
+     * @return The original field.
+     */
+    static String unescape(String field) {
+        StringBuilder original = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char escaped = field.charAt(++i);
+                switch (escaped) {
+                    case 't':
+                        original.append('\t');
+                        break;
+                    case 'n':
+                        original.append('\n');
+                        break;
+                    case 'r':
+                        original.append('\r');
+                        break;
+                    default:
+                        original.append(escaped);
+                        break;
+                }
+            } else {
+                original.append(c);
+            }
+        }
+        return original.toString();
+    }
+}
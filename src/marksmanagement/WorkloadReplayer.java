@@ -0,0 +1,235 @@
+package marksmanagement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+import edu.kit.informatik.Terminal;
+
+/**
+ * Replays a workload recorded by a {@link WorkloadRecorder} against a marks
+ * manager and reports how it performed.
+ * <p>
+ * The input lines are processed one after another by
+ * {@link MarksManagement#process(String)}, or submitted to a
+ * {@link PipelinedRunner}, either at their original pace or as fast as possible.
+ * The latency of a command is measured until its response has been completed.
+ * At the original pace, it is measured from the time the command was due, so a
+ * command that is delayed by a slow predecessor counts the delay too. Every
+ * response is compared with the recorded one.
+ * <p>
+ * The report consists of the total throughput and the number of mismatching
+ * responses, the first mismatches, and then per command type the number of
+ * commands and the 50th, 90th, 99th percentile and the maximum of their
+ * latencies in microseconds.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public class WorkloadReplayer {
+    private static final int REPORTED_MISMATCHES = 10;
+
+    private final MarksManagement mgmt;
+    private final PipelinedRunner pipeline;
+    private final Path file;
+    private final boolean maxSpeed;
+    private final Map<String, LatencyList> latencies;
+    private final List<String> mismatches;
+    private final Queue<Pending> pending;
+    private int mismatchCount;
+    private int count;
+
+    /**
+     * Creates a new replayer processing the lines one after another.
+     *
+     * @param mgmt The marks manager executing the commands.
+     * @param file The file the workload has been recorded into.
+     * @param maxSpeed {@code true} to replay as fast as possible, {@code false} to
+     *        replay at the original pace.
+     */
+    public WorkloadReplayer(MarksManagement mgmt, Path file, boolean maxSpeed) {
+        this(mgmt, null, file, maxSpeed);
+    }
+
+    /**
+     * Creates a new replayer submitting the lines to a pipeline.
+     *
+     * @param mgmt The marks manager executing the commands.
+     * @param pipeline The pipeline running the marks manager, {@code null} to
+     *        process the lines one after another.
+     * @param file The file the workload has been recorded into.
+     * @param maxSpeed {@code true} to replay as fast as possible, {@code false} to
+     *        replay at the original pace.
+     */
+    public WorkloadReplayer(MarksManagement mgmt, PipelinedRunner pipeline, Path file, boolean maxSpeed) {
+        this.mgmt = mgmt;
+        this.pipeline = pipeline;
+        this.file = file;
+        this.maxSpeed = maxSpeed;
+        this.latencies = new TreeMap<String, LatencyList>();
+        this.mismatches = new ArrayList<String>();
+        this.pending = new ArrayDeque<Pending>();
+    }
+
+    /**
+     * Replays the workload and prints the report.
+     *
+     * @throws UncheckedIOException If the file can't be read.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        if (pipeline != null) {
+            pipeline.start(response -> { });
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String record;
+            while ((record = reader.readLine()) != null && isRunning()) {
+                String[] fields = record.split("\t", -1);
+                String line = WorkloadRecorder.unescape(fields[1]);
+                String expected = WorkloadRecorder.unescape(fields[2]);
+                long due = start + Long.parseLong(fields[0]);
+                long now = System.nanoTime();
+                if (!maxSpeed && now < due) {
+                    LockSupport.parkNanos(due - now);
+                }
+                long begin = maxSpeed ? System.nanoTime() : due;
+                if (pipeline == null) {
+                    String response = mgmt.process(line);
+                    check(line, expected, response, System.nanoTime() - begin);
+                } else {
+                    pending.add(new Pending(line, expected, begin, pipeline.submit(line)));
+                    checkCompleted(false);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("the workload could not be read.", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (pipeline != null) {
+                pipeline.finish();
+            }
+        }
+        checkCompleted(true);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        Terminal.printLine("replayed " + count + " commands in " + elapsed / 1_000_000 + " ms, "
+                + count * 1_000_000_000L / elapsed + " commands/s, " + mismatchCount + " mismatches");
+        for (String mismatch : mismatches) {
+            Terminal.printLine(mismatch);
+        }
+        for (Map.Entry<String, LatencyList> type : latencies.entrySet()) {
+            LatencyList list = type.getValue();
+            list.sort();
+            Terminal.printLine(type.getKey() + ": n=" + list.size() + " p50=" + list.percentile(50) + " p90="
+                    + list.percentile(90) + " p99=" + list.percentile(99) + " max=" + list.percentile(100) + " us");
+        }
+    }
+
+    /**
+     * @return {@code true} if the marks manager or the pipeline still accepts lines.
+     */
+    private boolean isRunning() {
+        return pipeline == null ? mgmt.isRunning() : pipeline.isRunning();
+    }
+
+    /**
+     * Checks the responses of the submitted commands that have been completed, in
+     * the order of their input lines.
+     *
+     * @param all {@code true} to wait for all submitted commands.
+     */
+    private void checkCompleted(boolean all) {
+        while (!pending.isEmpty() && (all || pending.peek().completed.isDone())) {
+            Pending command = pending.poll();
+            long completed = command.completed.join();
+            check(command.line, command.expected, command.response.join(), completed - command.begin);
+        }
+    }
+
+    /**
+     * Counts a replayed command, records its latency and compares its response
+     * with the recorded one.
+     *
+     * @param line The input line.
+     * @param expected The recorded response, empty if there has been none.
+     * @param response The response, {@code null} if there is none.
+     * @param latency The latency of the command in nanoseconds.
+     */
+    private void check(String line, String expected, String response, long latency) {
+        count++;
+        latencies.computeIfAbsent(line.split(" ")[0], type -> new LatencyList()).add(latency);
+        String actual = response == null ? "" : response;
+        if (!actual.equals(expected)) {
+            if (mismatchCount++ < REPORTED_MISMATCHES) {
+                mismatches.add("mismatch in line " + count + ", " + line + ": expected '" + expected
+                        + "' but got '" + actual + "'");
+            }
+        }
+    }
+
+    /**
+     * A command submitted to the pipeline whose response hasn't been checked yet.
+     */
+    private static final class Pending {
+        private final String line;
+        private final String expected;
+        private final long begin;
+        private final CompletableFuture<String> response;
+        /**
+         * The time the response has been completed at.
+         */
+        private final CompletableFuture<Long> completed;
+
+        private Pending(String line, String expected, long begin, CompletableFuture<String> response) {
+            this.line = line;
+            this.expected = expected;
+            this.begin = begin;
+            this.response = response;
+            this.completed = response.thenApply(completedResponse -> System.nanoTime());
+        }
+    }
+
+    /**
+     * The latencies of one command type in nanoseconds, kept in a growing
+     * primitive array.
+     */
+    private static final class LatencyList {
+        private long[] latencies = new long[16];
+        private int size;
+
+        private void add(long latency) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latency;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void sort() {
+            Arrays.sort(latencies, 0, size);
+        }
+
+        /**
+         * @param percent The percentile, between 1 and 100.
+         * @return The latency of the percentile by the nearest rank, in microseconds.
+         */
+        private long percentile(int percent) {
+            int rank = (int) Math.ceil(percent / 100.0 * size);
+            return latencies[Math.max(0, rank - 1)] / 1000;
+        }
+    }
+}
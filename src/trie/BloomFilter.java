@@ -0,0 +1,116 @@
+package trie;
+
+/**
+ * A Bloom filter over student names. It answers whether a name might have been
+ * put into it: a name that has been put is always reported, while a name that
+ * hasn't been put is only reported with a small false positive rate. Names can't
+ * be removed; the filter is rebuilt instead.
+ * <p>
+ * The bit positions of a name are derived from one 64-bit hash by double
+ * hashing.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+final class BloomFilter {
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+    private final int capacity;
+
+    /**
+     * Creates a new empty filter.
+     *
+     * @param capacity The number of names the filter is sized for.
+     * @param falsePositiveRate The wanted false positive rate at full capacity.
+     */
+    BloomFilter(int capacity, double falsePositiveRate) {
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bitCount = (int) Math.max(64, Math.min(optimalBits, Integer.MAX_VALUE - 63));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * ln2));
+        this.bits = new long[(bitCount + 63) / 64];
+        this.capacity = capacity;
+    }
+
+    /**
+     * Puts a name into the filter.
+     *
+     * @param studentName The student's name.
+     */
+    void put(String studentName) {
+        long hash = hash(studentName);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(first + i * second, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks if a name might have been put into the filter.
+     *
+     * @param studentName The student's name.
+     * @return {@code false} if the name has certainly not been put, {@code true} otherwise.
+     */
+    boolean mightContain(String studentName) {
+        long hash = hash(studentName);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(first + i * second, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The estimated number of bytes the filter occupies in the heap.
+     */
+    long estimatedSize() {
+        return 32 + 16 + 8L * bits.length;
+    }
+
+    /**
+     * @return The number of names the filter is sized for.
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Computes the expected false positive rate after a number of names have been
+     * put, which is {@code (1 - e^(-k * n / m))^k} for {@code k} hash functions and
+     * {@code m} bits.
+     *
+     * @param names The number of names put into the filter.
+     * @return The expected false positive rate.
+     */
+    double falsePositiveRate(int names) {
+        return Math.pow(1 - Math.exp(-(double) hashCount * names / bitCount), hashCount);
+    }
+
+    /**
+     * Hashes a name by FNV-1a over its characters followed by the finalizer of
+     * MurmurHash3, which spreads the bits over the whole 64 bits.
+     *
+     * @param studentName The student's name.
+     * @return The 64-bit hash of the name.
+     */
+    static long hash(String studentName) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < studentName.length(); i++) {
+            hash ^= studentName.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
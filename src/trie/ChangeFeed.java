@@ -0,0 +1,274 @@
+package trie;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The change feed of a trie. It retains the latest published changes in a ring
+ * buffer, so subscribers can resume after any retained sequence number. The ring
+ * buffer is only allocated when the first publisher is requested, so a trie
+ * nobody follows doesn't retain any changes; the changes published before are
+ * not retained.
+ * <p>
+ * Every subscription has its own cursor into the retained changes and only
+ * receives as many changes as it has requested. A subscriber that falls so far
+ * behind that the changes it still needs are no longer retained is terminated
+ * with an error and has to start over from a fresh copy of the trie, and so is a
+ * subscriber resuming after a change that hasn't been published yet. The
+ * publisher therefore never blocks on slow subscribers. The changes are delivered
+ * on the given executor, never on the thread changing the trie.
+ * <p>
+ * A feed can be closed when its trie is replaced, e.g. by an evicted course.
+ * Every subscriber then receives the changes published so far and is terminated
+ * with an error, so it knows to subscribe to the replacing trie.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+final class ChangeFeed {
+    private final int capacity;
+    private final Executor executor;
+    private final CopyOnWriteArrayList<FeedSubscription> subscriptions;
+    private TrieChange[] retained;
+    private long retainedAfter;
+    private long sequence;
+    private volatile Throwable closed;
+
+    /**
+     * Creates a new change feed.
+     *
+     * @param capacity The number of changes that are retained for resumption.
+     * @param executor The executor the changes are delivered on.
+     */
+    ChangeFeed(int capacity, Executor executor) {
+        this.capacity = capacity;
+        this.executor = executor;
+        this.subscriptions = new CopyOnWriteArrayList<FeedSubscription>();
+    }
+
+    /**
+     * Creates a new change feed retaining 4096 changes and delivering them on the
+     * common fork join pool.
+     */
+    ChangeFeed() {
+        this(4096, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Publishes a change to all subscribers.
+     *
+     * @param sequence The sequence number of the change, one more than the one of the previous change.
+     * @param type The kind of the change.
+     * @param studentName The name of the changed student.
+     * @param points The points after the change.
+     * @param previousPoints The points before the change.
+     */
+    void publish(long sequence, TrieChange.Type type, String studentName, int points, int previousPoints) {
+        synchronized (this) {
+            this.sequence = sequence;
+            if (retained == null) {
+                return;
+            }
+            retained[(int) (sequence % retained.length)] = new TrieChange(sequence, type, studentName, points,
+                    previousPoints);
+        }
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * @return The sequence number of the latest change, 0 if there is none.
+     */
+    synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Creates a publisher of all changes following the given sequence number, and
+     * starts retaining the changes if it hasn't yet.
+     *
+     * @param after The sequence number of the last change the subscriber already knows.
+     * @return The publisher.
+     */
+    Flow.Publisher<TrieChange> publisher(long after) {
+        synchronized (this) {
+            if (retained == null) {
+                retained = new TrieChange[capacity];
+                retainedAfter = sequence;
+            }
+        }
+        return subscriber -> {
+            FeedSubscription subscription = new FeedSubscription(subscriber, after);
+            long current = getSequence();
+            if (after > current) {
+                subscription.error = new IllegalStateException(
+                        "the change " + after + " has not been published yet, the latest one is " + current + ".");
+            }
+            subscriber.onSubscribe(subscription);
+            // registered only now, so no signal reaches the subscriber before onSubscribe has returned
+            subscriptions.add(subscription);
+            if (subscription.done) {
+                subscriptions.remove(subscription);
+            }
+            subscription.start();
+        };
+    }
+
+    /**
+     * Closes the feed. The subscribers receive the changes published so far and
+     * are then terminated with the given error, and so are later subscribers.
+     *
+     * @param error The error the subscribers are terminated with.
+     */
+    void close(Throwable error) {
+        closed = error;
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * Estimates the heap memory the retained changes occupy.
+     *
+     * @return The estimated number of bytes, 0 if no changes are retained.
+     */
+    synchronized long estimatedSize() {
+        if (retained == null) {
+            return 0;
+        }
+        long changes = Math.min(sequence - retainedAfter, retained.length);
+        // a reference per slot and an object per change, whose name is shared with the trie
+        return 16 + 4L * retained.length + changes * 40;
+    }
+
+    /**
+     * Gets a retained change.
+     *
+     * @param wanted The sequence number of the wanted change.
+     * @return The change, {@code null} if it hasn't been published yet.
+     * @throws IllegalStateException If the change is no longer retained.
+     */
+    private synchronized TrieChange get(long wanted) {
+        if (wanted > sequence) {
+            return null;
+        }
+        if (wanted <= retainedAfter || wanted <= sequence - retained.length) {
+            throw new IllegalStateException("the change " + wanted + " is no longer retained.");
+        }
+        return retained[(int) (wanted % retained.length)];
+    }
+
+    /**
+     * A subscription delivering the changes following its cursor.
+     */
+    private final class FeedSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super TrieChange> subscriber;
+        private final AtomicLong requested;
+        private final AtomicInteger pending;
+        private long cursor;
+        private volatile boolean done;
+        /**
+         * The error the subscriber is terminated with by the next delivery run.
+         */
+        private volatile Throwable error;
+
+        private FeedSubscription(Flow.Subscriber<? super TrieChange> subscriber, long after) {
+            this.subscriber = subscriber;
+            this.requested = new AtomicLong();
+            // held until the subscription is started, so no delivery run is scheduled before
+            this.pending = new AtomicInteger(1);
+            this.cursor = after;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("non-positive request: " + n);
+                signal();
+                return;
+            }
+            requested.getAndAccumulate(n, (current, added) -> {
+                long sum = current + added;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Schedules the first delivery run, which also delivers the signals received
+         * before.
+         */
+        private void start() {
+            executor.execute(this::deliver);
+        }
+
+        /**
+         * Schedules a delivery run unless one is already scheduled or the
+         * subscription hasn't been started yet.
+         */
+        private void signal() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this::deliver);
+            }
+        }
+
+        /**
+         * Delivers as many changes as requested and available. Only one delivery run
+         * is active at a time, so the subscriber is called serially.
+         */
+        private void deliver() {
+            int missed = pending.get();
+            while (true) {
+                try {
+                    if (error != null) {
+                        fail(error);
+                    }
+                    while (!done && requested.get() > 0) {
+                        TrieChange change = get(cursor + 1);
+                        if (change == null) {
+                            break;
+                        }
+                        cursor++;
+                        if (requested.get() != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+                        subscriber.onNext(change);
+                    }
+                    Throwable closedBy = closed;
+                    if (!done && closedBy != null && get(cursor + 1) == null) {
+                        fail(closedBy);
+                    }
+                } catch (IllegalStateException ex) {
+                    fail(ex);
+                }
+                missed = pending.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Terminates the subscription with an error.
+         *
+         * @param error The error the subscriber is notified about.
+         */
+        private void fail(Throwable error) {
+            if (!done) {
+                cancel();
+                subscriber.onError(error);
+            }
+        }
+    }
+}
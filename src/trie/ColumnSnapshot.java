@@ -0,0 +1,187 @@
+package trie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A snapshot of a trie that stores the points of its students in a
+ * {@link PointsColumn}, indexed by a dense number per student. The subclasses
+ * define how a name is mapped to its number.
+ * <p>
+ * The column is changed in place for the next version as long as the snapshot
+ * hasn't been handed out to a reader. After it has been pinned, the next version
+ * copies it once, so taking a snapshot still takes constant time. The trie pins
+ * its snapshots under the lock of its writers, so a writer never changes a column
+ * in place after it has been pinned. Queries over all students are sequential
+ * passes over the column.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+abstract class ColumnSnapshot extends TrieSnapshot {
+    private final PointsColumn column;
+
+    /**
+     * Creates a new snapshot.
+     *
+     * @param name The name of the trie.
+     * @param column The points of the version of the trie.
+     * @param version The sequence number of the latest change in the version.
+     */
+    ColumnSnapshot(String name, PointsColumn column, long version) {
+        super(name, version);
+        this.column = column;
+    }
+
+    /**
+     * @param studentName The student's name.
+     * @return The number of the student, -1 if the name has none.
+     */
+    abstract int indexOf(String studentName);
+
+    /**
+     * Gets the number of a student that is going to be stored.
+     *
+     * @param studentName The student's name, which is accepted by this snapshot.
+     * @return The number of the student.
+     */
+    int indexForWriting(String studentName) {
+        return indexOf(studentName);
+    }
+
+    /**
+     * @param index The number of a student.
+     * @return The name of the student.
+     */
+    abstract String nameOf(int index);
+
+    /**
+     * Creates a later version of the same kind.
+     *
+     * @param next The points of the later version.
+     * @param version The sequence number of the latest change in the later version.
+     * @return The later version.
+     */
+    abstract ColumnSnapshot next(PointsColumn next, long version);
+
+    @Override
+    public int credits(String word) {
+        return column.get(indexOf(word));
+    }
+
+    /**
+     * @param index The number of a student.
+     * @return The points of the student, -1 if the student isn't present.
+     */
+    int pointsAt(int index) {
+        return column.get(index);
+    }
+
+    /**
+     * Prints the summary of all students' points in the same format as
+     * {@code Node}, after ordering them by their names.
+     *
+     * @return The summary of the students with their points.
+     */
+    @Override
+    public String print() {
+        return print(range(0, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Finds the students with the highest points by one pass over the column that
+     * keeps the {@code k} best students seen so far in a heap.
+     *
+     * @param k The maximal number of students to find.
+     * @return The found students.
+     */
+    @Override
+    public List<Student> top(int k) {
+        Comparator<Student> order = Comparator.comparingInt(Student::getPoints).reversed()
+                .thenComparing(Student::getName, TrieSnapshot::compareNames);
+        PriorityQueue<Student> best = new PriorityQueue<Student>(order.reversed());
+        for (int index = column.nextPresent(0); index >= 0; index = column.nextPresent(index + 1)) {
+            int points = column.get(index);
+            if (best.size() < k || points >= best.peek().getPoints()) {
+                best.add(new Student(nameOf(index), points));
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+        }
+        List<Student> students = new ArrayList<Student>(best);
+        Collections.sort(students, order);
+        return students;
+    }
+
+    @Override
+    public List<Student> range(int low, int high) {
+        List<Student> students = new ArrayList<Student>();
+        for (int index = column.nextPresent(0); index >= 0; index = column.nextPresent(index + 1)) {
+            int points = column.get(index);
+            if (points >= low && points <= high) {
+                students.add(new Student(nameOf(index), points));
+            }
+        }
+        Collections.sort(students, Comparator.comparing(Student::getName, TrieSnapshot::compareNames));
+        return students;
+    }
+
+    @Override
+    public boolean has(String studentName) {
+        return column.isPresent(indexOf(studentName));
+    }
+
+    @Override
+    public boolean hasStudents() {
+        return !column.isEmpty();
+    }
+
+    @Override
+    public long estimatedSize() {
+        return column.estimatedSize();
+    }
+
+    @Override
+    void collectPoints(ArrayList<Integer> creditList) {
+        for (int index = column.nextPresent(0); index >= 0; index = column.nextPresent(index + 1)) {
+            creditList.add(column.get(index));
+        }
+    }
+
+    @Override
+    TrieSnapshot put(String studentName, int points) {
+        PointsColumn next = column.forWriting();
+        next.set(indexForWriting(studentName), points);
+        return next(next, getVersion() + 1);
+    }
+
+    @Override
+    TrieSnapshot remove(String studentName) {
+        PointsColumn next = column.forWriting();
+        next.clear(indexOf(studentName));
+        return next(next, getVersion() + 1);
+    }
+
+    @Override
+    TrieSnapshot putAll(List<Student> changes) {
+        PointsColumn next = column.forWriting();
+        for (Student change : changes) {
+            if (change.getPoints() == -1) {
+                next.clear(indexOf(change.getName()));
+            } else {
+                next.set(indexForWriting(change.getName()), change.getPoints());
+            }
+        }
+        return next(next, getVersion() + changes.size());
+    }
+
+    @Override
+    TrieSnapshot pin() {
+        column.pin();
+        return this;
+    }
+}
@@ -0,0 +1,74 @@
+package trie;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of a trie that takes the numbers of its students from a
+ * {@link StudentDictionary} shared with other courses and only stores the
+ * column of their points.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+final class DictionarySnapshot extends ColumnSnapshot {
+    private final StudentDictionary dictionary;
+
+    /**
+     * Creates a new empty snapshot.
+     *
+     * @param name The name of the trie.
+     * @param dictionary The dictionary giving the students their numbers.
+     */
+    DictionarySnapshot(String name, StudentDictionary dictionary) {
+        this(name, dictionary, new PointsColumn(16), 0);
+    }
+
+    private DictionarySnapshot(String name, StudentDictionary dictionary, PointsColumn column, long version) {
+        super(name, column, version);
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Finds the similar students by walking the trie of the shared dictionary in
+     * lockstep with the automaton and keeping the names that are in this course.
+     *
+     * @param query The query name.
+     * @param maxDistance The maximal number of inserted, deleted or substituted letters.
+     * @return The found students, ordered by their edit distance and then by their names.
+     */
+    @Override
+    public List<Student> similar(String query, int maxDistance) {
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton(query, maxDistance);
+        SortedMap<Integer, List<Student>> matches = new TreeMap<Integer, List<Student>>();
+        dictionary.getRoot().collectSimilar(automaton, automaton.start(), new StringBuilder(), this::pointsAt,
+                matches);
+        return ordered(matches);
+    }
+
+    @Override
+    boolean accepts(String studentName) {
+        return true;
+    }
+
+    @Override
+    int indexOf(String studentName) {
+        return dictionary.lookup(studentName);
+    }
+
+    @Override
+    int indexForWriting(String studentName) {
+        return dictionary.intern(studentName);
+    }
+
+    @Override
+    String nameOf(int index) {
+        return dictionary.nameOf(index);
+    }
+
+    @Override
+    ColumnSnapshot next(PointsColumn next, long version) {
+        return new DictionarySnapshot(getCourseName(), dictionary, next, version);
+    }
+}
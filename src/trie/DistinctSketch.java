@@ -0,0 +1,118 @@
+package trie;
+
+import java.util.Base64;
+
+/**
+ * A HyperLogLog sketch of student names, which estimates how many distinct names
+ * have been put into it while only keeping {@value #REGISTERS} small registers,
+ * and which can be merged with the sketches of other courses. A student who
+ * attends several courses is counted once.
+ * <p>
+ * The first {@value #PRECISION} bits of the hash of a name select a register,
+ * which keeps the highest position of the first set bit among the remaining
+ * bits of the names it has seen. The estimate is the normalized harmonic mean of
+ * the registers, corrected by linear counting while many registers are still
+ * empty.
+ * <p>
+ * With 4096 registers, the standard error of the estimate is about
+ * {@code 1.04 / sqrt(4096)}, i.e. 1.6%. Merged sketches have the same error.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public final class DistinctSketch {
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private final byte[] registers;
+
+    /**
+     * Creates a new empty sketch.
+     */
+    public DistinctSketch() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    /**
+     * Puts a name into the sketch.
+     *
+     * @param studentName The student's name.
+     */
+    public void update(String studentName) {
+        long hash = BloomFilter.hash(studentName);
+        int register = (int) (hash >>> (64 - PRECISION));
+        // the guard bit keeps the rank within the remaining bits
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * Merges another sketch into this one, which then sketches the names of both.
+     *
+     * @param other The other sketch, which stays unchanged.
+     */
+    public void merge(DistinctSketch other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return The estimated number of distinct names.
+     */
+    public long estimate() {
+        double sum = 0;
+        int empty = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                empty++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && empty > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return The estimated number of bytes the sketch occupies in the heap.
+     */
+    long estimatedSize() {
+        return 16 + 16 + REGISTERS;
+    }
+
+    /**
+     * Encodes the registers of the sketch in Base64, e.g. to send it to another
+     * process.
+     *
+     * @return The encoded sketch.
+     */
+    @Override
+    public String toString() {
+        return Base64.getEncoder().encodeToString(registers);
+    }
+
+    /**
+     * Decodes a sketch encoded by {@link #toString()}.
+     *
+     * @param encoded The encoded sketch.
+     * @return The decoded sketch.
+     * @throws IllegalArgumentException If the text isn't an encoded sketch.
+     */
+    public static DistinctSketch parse(String encoded) {
+        byte[] decoded = Base64.getDecoder().decode(encoded);
+        if (decoded.length != REGISTERS) {
+            throw new IllegalArgumentException("invalid distinct sketch: ".concat(encoded));
+        }
+        DistinctSketch sketch = new DistinctSketch();
+        System.arraycopy(decoded, 0, sketch.registers, 0, REGISTERS);
+        return sketch;
+    }
+}
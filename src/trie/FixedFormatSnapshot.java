@@ -0,0 +1,132 @@
+package trie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of a trie that only stores names of the fixed format
+ * {@code u[a-z]{4}}. Such a name is encoded into a dense number below 26^4, which
+ * is used as index into the primitive column of points. Looking up, adding,
+ * changing and deleting a student is therefore a single array access, and the
+ * numbers are in the alphabetical order of the names.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+final class FixedFormatSnapshot extends ColumnSnapshot {
+    private static final int LETTERS = 26;
+    private static final int NAME_LENGTH = 5;
+    private static final int CAPACITY = LETTERS * LETTERS * LETTERS * LETTERS;
+
+    /**
+     * Creates a new empty snapshot.
+     *
+     * @param name The name of the trie.
+     */
+    FixedFormatSnapshot(String name) {
+        this(name, new PointsColumn(CAPACITY), 0);
+    }
+
+    private FixedFormatSnapshot(String name, PointsColumn column, long version) {
+        super(name, column, version);
+    }
+
+    /**
+     * Finds the similar students by walking the implicit trie of all names of the
+     * fixed format in lockstep with the automaton. Only the names the automaton can
+     * still accept are expanded and looked up in the column.
+     *
+     * @param query The query name.
+     * @param maxDistance The maximal number of inserted, deleted or substituted letters.
+     * @return The found students, ordered by their edit distance and then by their names.
+     */
+    @Override
+    public List<Student> similar(String query, int maxDistance) {
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton(query, maxDistance);
+        SortedMap<Integer, List<Student>> matches = new TreeMap<Integer, List<Student>>();
+        int[] state = automaton.step(automaton.start(), 'u');
+        if (automaton.canAccept(state)) {
+            collectSimilar(automaton, state, 1, 0, matches);
+        }
+        return ordered(matches);
+    }
+
+    /**
+     * Walks the names of the fixed format that start with a given prefix.
+     *
+     * @param automaton The automaton.
+     * @param state The state of the automaton after reading the prefix.
+     * @param length The length of the prefix.
+     * @param index The base-26 value of the letters of the prefix following the 'u'.
+     * @param matches The found students by their edit distance.
+     */
+    private void collectSimilar(LevenshteinAutomaton automaton, int[] state, int length, int index,
+            SortedMap<Integer, List<Student>> matches) {
+        if (length == NAME_LENGTH) {
+            int points = pointsAt(index);
+            if (points != -1 && automaton.isAccepting(state)) {
+                matches.computeIfAbsent(automaton.distance(state), distance -> new ArrayList<Student>())
+                        .add(new Student(nameOf(index), points));
+            }
+            return;
+        }
+        for (int letter = 0; letter < LETTERS; letter++) {
+            int[] next = automaton.step(state, 'a' + letter);
+            if (automaton.canAccept(next)) {
+                collectSimilar(automaton, next, length + 1, index * LETTERS + letter, matches);
+            }
+        }
+    }
+
+    @Override
+    boolean accepts(String studentName) {
+        return indexOf(studentName) != -1;
+    }
+
+    /**
+     * Encodes a name of the format {@code u[a-z]{4}} into its number, which is the
+     * base-26 value of its last four letters.
+     *
+     * @param studentName The student's name.
+     * @return The number of the name, -1 if the name doesn't have the fixed format.
+     */
+    @Override
+    int indexOf(String studentName) {
+        if (studentName.length() != NAME_LENGTH || studentName.charAt(0) != 'u') {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 1; i < NAME_LENGTH; i++) {
+            char letter = studentName.charAt(i);
+            if (letter < 'a' || letter > 'z') {
+                return -1;
+            }
+            index = index * LETTERS + (letter - 'a');
+        }
+        return index;
+    }
+
+    /**
+     * Decodes the number of a name back into the name.
+     *
+     * @param index The number of the name.
+     * @return The name.
+     */
+    @Override
+    String nameOf(int index) {
+        char[] name = new char[NAME_LENGTH];
+        name[0] = 'u';
+        for (int i = NAME_LENGTH - 1; i > 0; i--) {
+            name[i] = (char) ('a' + index % LETTERS);
+            index /= LETTERS;
+        }
+        return new String(name);
+    }
+
+    @Override
+    ColumnSnapshot next(PointsColumn next, long version) {
+        return new FixedFormatSnapshot(getCourseName(), next, version);
+    }
+}
@@ -0,0 +1,89 @@
+package trie;
+
+/**
+ * An automaton accepting all words within a maximal edit distance (insertions,
+ * deletions and substitutions of single code points) of a query word.
+ * <p>
+ * A state of the automaton is the row of the edit distances between the prefix
+ * of the word read so far and every prefix of the query. Walking a trie in
+ * lockstep with the automaton therefore costs one row per visited node, and a
+ * whole subtree can be skipped as soon as no entry of the row is within the
+ * maximal distance anymore, since no continuation of the prefix can then reach
+ * the query.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+final class LevenshteinAutomaton {
+    private final int[] query;
+    private final int maxDistance;
+
+    /**
+     * Creates a new automaton.
+     *
+     * @param query The query word.
+     * @param maxDistance The maximal edit distance of an accepted word.
+     */
+    LevenshteinAutomaton(String query, int maxDistance) {
+        this.query = query.codePoints().toArray();
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @return The state before any code point has been read.
+     */
+    int[] start() {
+        int[] state = new int[query.length + 1];
+        for (int i = 0; i <= query.length; i++) {
+            state[i] = i;
+        }
+        return state;
+    }
+
+    /**
+     * Reads the next code point of a word.
+     *
+     * @param state The current state.
+     * @param letter The code point.
+     * @return The next state.
+     */
+    int[] step(int[] state, int letter) {
+        int[] next = new int[state.length];
+        next[0] = state[0] + 1;
+        for (int i = 1; i < state.length; i++) {
+            int substitution = state[i - 1] + (query[i - 1] == letter ? 0 : 1);
+            next[i] = Math.min(substitution, Math.min(state[i] + 1, next[i - 1] + 1));
+        }
+        return next;
+    }
+
+    /**
+     * @param state A state.
+     * @return {@code true} if the word read so far is within the maximal distance, {@code false} otherwise.
+     */
+    boolean isAccepting(int[] state) {
+        return state[query.length] <= maxDistance;
+    }
+
+    /**
+     * @param state A state.
+     * @return {@code true} if some continuation of the word read so far might be
+     *         accepted, {@code false} if none can be.
+     */
+    boolean canAccept(int[] state) {
+        for (int distance : state) {
+            if (distance <= maxDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param state An accepting state.
+     * @return The edit distance between the word read so far and the query.
+     */
+    int distance(int[] state) {
+        return state[query.length];
+    }
+}
@@ -1,25 +1,69 @@
 package trie;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.IntUnaryOperator;
 
 /**
  * The node of a Trie.
+ * <p>
+ * The edges to the sub-nodes are labelled with Unicode code points and kept in
+ * ascending order, so a node can hold keys of any alphabet (including byte-level
+ * keys in the range 0 to 255) and traversing it only costs as much as the number
+ * of sub-nodes it actually has. A node whose {@code content} is not -1 marks the
+ * end of a stored key, which can also be the prefix of a longer key.
+ * <p>
+ * Nodes are persistent: they never change once they have been created. Adding
+ * or deleting a student copies only the nodes on the path to the
+ * student and returns a new root, which shares all other nodes with the old one.
+ * So an old root stays a consistent version of the trie as long as it is
+ * referenced.
+ * <p>
+ * Every node also knows the highest and the lowest points stored in its subtree
+ * and the number of nodes in it, which are computed once when the node is
+ * created. Queries for the best students or for students within a range of
+ * points use them to skip whole subtrees.
  * 
  * @author Moayad Yaghi
  * @version 1.0
  */
 class Node {
-    private HashMap<Character, Node> children;
-    private int content;
+    private final TreeMap<Integer, Node> children;
+    private final int content;
+    private final int max;
+    private final int min;
+    private final int nodes;
 
     /**
-     * Creates a new sub-node for the node and sets its content to -1.
+     * Creates a new empty node and sets its content to -1.
      */
     public Node() {
-        children = new HashMap<Character, Node>();
-        content = -1;
+        this(new TreeMap<Integer, Node>(), -1);
+    }
+
+    /**
+     * Creates a new node.
+     *
+     * @param children The sub-nodes of the node, which must not be changed afterwards.
+     * @param content The points stored in the node, -1 if it doesn't end a name.
+     */
+    private Node(TreeMap<Integer, Node> children, int content) {
+        this.children = children;
+        this.content = content;
+        int highest = content;
+        int lowest = content == -1 ? Integer.MAX_VALUE : content;
+        int count = 1;
+        for (Node child : children.values()) {
+            highest = Math.max(highest, child.max);
+            lowest = Math.min(lowest, child.min);
+            count += child.nodes;
+        }
+        this.max = highest;
+        this.min = lowest;
+        this.nodes = count;
     }
 
     /**
@@ -29,71 +73,107 @@ class Node {
      * compares the prefixes of the given student's name with the letters on the
      * nodes. Once it finds that there is no node for the letter it's now comparing
      * it creates nodes for the actual letter and for the rest suffixes of the
-     * student's name if there are any. Lastly it changes the content of the last
-     * node by making it equals the given points.
+     * student's name if there are any. Lastly it sets the content of the last node
+     * to the given points. Every traversed node is copied on the way back.
      * 
      * @param studentName The input student's name.
      * @param points The input points for a student.
-     * @return {@code true} if the process went normally, {@code false} otherwise.
+     * @return The copy of this node containing the student.
      */
-    boolean add(String studentName, int points) {
+    Node add(String studentName, int points) {
         if (studentName.length() > 0) {
-            if (children.keySet().contains(studentName.charAt(0))) {
-                children.get(studentName.charAt(0)).add(studentName.substring(1, studentName.length()), points);
-            } else {
-                Node newNode = new Node();
-                newNode.add(studentName.substring(1, studentName.length()), points);
-                children.put(studentName.charAt(0), newNode);
+            int letter = studentName.codePointAt(0);
+            Node child = children.get(letter);
+            if (child == null) {
+                child = new Node();
             }
-        } else {
-            this.content = points;
+            return withChild(letter, child.add(rest(studentName, letter), points));
         }
-        return true;
+        return new Node(children, points);
     }
 
     /**
-     * Changes the {@code content} value of the last node to the input points by
-     * traversing throw the nodes until reaching the last node.
+     * Deletes a student from a particular course of study.
+     * <p>
+     * It does it by traversing throw the nodes and to delete a given student name.
+     * It looks if some nodes have no more sub-nodes after deleting the given
+     * student's name (That means there is no other student has the same letters in
+     * their name) then it deletes those nodes because they would be useless. A
+     * node that still ends the name of another student is kept.
      * 
-     * @param studentName The input student name whose points are going to change.
-     * @param points The new points of the given student.
-     * @return {@code true} if the process went normally, {@code false} otherwise.
+     * @param studentName The input student's name who is going to be removed.
+     * @return The copy of this node without the student, this node itself if the
+     *         student does not exist.
      */
-    boolean modify(String studentName, int points) {
+    Node delete(String studentName) {
         if (studentName.length() > 0) {
-            if (children.keySet().contains(studentName.charAt(0))) {
-                return children.get(studentName.charAt(0))
-                        .modify(studentName.substring(1, studentName.length()), points);
-            } else {
-                return false;
+            int letter = studentName.codePointAt(0);
+            Node child = children.get(letter);
+            if (child == null) {
+                return this;
+            }
+            Node deleted = child.delete(rest(studentName, letter));
+            if (deleted == child) {
+                return this;
+            }
+            if (!deleted.hasChildren() && deleted.content == -1) {
+                TreeMap<Integer, Node> copy = new TreeMap<Integer, Node>(children);
+                copy.remove(letter);
+                return new Node(copy, content);
             }
-        } else {
-            this.content = points;
+            return withChild(letter, deleted);
+        } else if (content == -1) {
+            return this;
         }
-        return true;
+        return new Node(children, -1);
     }
 
     /**
-     * Deletes a student from a particular course of study.
+     * Applies a batch of changes to the students whose names start with the same
+     * prefix.
      * <p>
-     * It does it by traversing throw the nodes and to delete a given student name.
-     * It looks if some nodes have no more sub-nodes after deleting the given
-     * student's name (That means there is no other student has the same letters in
-     * their name) then it deletes those nodes because they would be useless.
-     * 
-     * @param studentName The input student's name who is going to be removed.
+     * It does it by setting the content of this node if the first name of the batch
+     * ends here and then splitting the rest of the batch into the groups of names
+     * that continue with the same letter. Every group is applied to the sub-node of
+     * its letter by recursion, and sub-nodes that end up empty are removed like in
+     * {@link #delete(String)}. Because the names are ordered, each node on the
+     * paths of the changed students is copied only once, and its highest and lowest
+     * points are computed once for the whole batch.
+     *
+     * @param changes The students with their new points, -1 for a student to be
+     *        removed, ordered by their names.
+     * @param from The index of the first change of the group.
+     * @param to The index after the last change of the group.
+     * @param offset The length of the prefix the names of the group share, which
+     *        is the path to this node.
+     * @return The copy of this node with the changes applied.
      */
-    void delete(String studentName) {
-        if (studentName.length() > 0) {
-            if (children.keySet().contains(studentName.charAt(0))) {
-                children.get(studentName.charAt(0)).delete(studentName.substring(1, studentName.length()));
-                if (!children.get(studentName.charAt(0)).hasChildren()) {
-                    children.remove(studentName.charAt(0));
-                }
-                return;
+    Node apply(List<Student> changes, int from, int to, int offset) {
+        int points = content;
+        if (from < to && changes.get(from).getName().length() == offset) {
+            points = changes.get(from).getPoints();
+            from++;
+        }
+        TreeMap<Integer, Node> copy = new TreeMap<Integer, Node>(children);
+        while (from < to) {
+            int letter = changes.get(from).getName().codePointAt(offset);
+            int end = from + 1;
+            while (end < to && changes.get(end).getName().codePointAt(offset) == letter) {
+                end++;
+            }
+            Node child = children.get(letter);
+            if (child == null) {
+                child = new Node();
             }
+            Node applied = child.apply(changes, from, end, offset + Character.charCount(letter));
+            if (!applied.hasChildren() && applied.content == -1) {
+                copy.remove(letter);
+            } else {
+                copy.put(letter, applied);
+            }
+            from = end;
         }
-        this.children.clear();
+        return new Node(copy, points);
     }
 
     /**
@@ -104,14 +184,16 @@ class Node {
      * traversed nodes.
      * 
      * @param studentName The given student name.
-     * @return The points of a student.
+     * @return The points of a student, -1 if the student does not exist.
      */
     int credits(String studentName) {
         if (studentName.length() > 0) {
-            if (children.keySet().contains(studentName.charAt(0))) {
-                children.get(studentName.charAt(0)).credits(studentName.substring(1, studentName.length()));
-                content = children.get(studentName.charAt(0)).content;
+            int letter = studentName.codePointAt(0);
+            Node child = children.get(letter);
+            if (child == null) {
+                return -1;
             }
+            return child.credits(rest(studentName, letter));
         }
         return content;
     }
@@ -125,9 +207,11 @@ class Node {
      * until it reaches the edge then it also returns the {@code content} ,which is
      * the points of a student, of a the last nodes between parentheses.
      * <p>
-     * If a node has child nodes, it traverses them according to the alphabetical
-     * order (from 'a' to 'z') of their associated character to add them in that
-     * order in between the square brackets.
+     * If a node has child nodes, it traverses them according to the ascending
+     * order of their associated code points (from 'a' to 'z' for Latin small
+     * letters) to add them in that order in between the square brackets. A node
+     * that ends a name and also has child nodes prints its points right before its
+     * square brackets.
      * <p>
      * Example: Given two names with their points {@code uabmn}(1),
      * {@code uabxy}(2).
@@ -138,19 +222,21 @@ class Node {
      */
     String print() {
         if (hasChildren()) {
-            Set<Character> keys = children.keySet();
-            String summary = "";
-
-            for (char letter = 'a'; letter <= 'z'; letter++) {
-                if (keys.contains(letter)) {
-                    if (children.get(letter).hasChildren()) {
-                        summary += letter + "[" + children.get(letter).print() + "]";
-                    } else {
-                        summary += letter + children.get(letter).print();
+            StringBuilder summary = new StringBuilder();
+
+            for (Map.Entry<Integer, Node> entry : children.entrySet()) {
+                Node child = entry.getValue();
+                summary.appendCodePoint(entry.getKey());
+                if (child.hasChildren()) {
+                    if (child.content != -1) {
+                        summary.append("(").append(child.content).append(")");
                     }
+                    summary.append("[").append(child.print()).append("]");
+                } else {
+                    summary.append(child.print());
                 }
             }
-            return summary;
+            return summary.toString();
         }
         return "(" + content + ")";
     }
@@ -166,18 +252,12 @@ class Node {
      *            of students.
      */
     void collectPoints(ArrayList<Integer> creditList) {
-        if (hasChildren()) {
-            Set<Character> keys = children.keySet();
-
-            for (char letter = 'a'; letter <= 'z'; letter++) {
-                if (keys.contains(letter)) {
-                    children.get(letter).collectPoints(creditList);
-                }
-            }
-        }
-        if (content != -1  && !hasChildren()) {
+        if (content != -1) {
             creditList.add(content);
         }
+        for (Node child : children.values()) {
+            child.collectPoints(creditList);
+        }
     }
 
     /**
@@ -192,13 +272,108 @@ class Node {
      */
     boolean has(String studentName) {
         if (studentName.length() > 0) {
-            if (children.keySet().contains(studentName.charAt(0))) {
-                return children.get(studentName.charAt(0)).has(studentName.substring(1, studentName.length()));
+            int letter = studentName.codePointAt(0);
+            Node child = children.get(letter);
+            if (child != null) {
+                return child.has(rest(studentName, letter));
             } else {
                 return false;
             }
         }
-        return true;
+        return content != -1;
+    }
+
+    /**
+     * Collects the students whose points lie within a given range in the
+     * alphabetical order of their names.
+     * <p>
+     * It does it by traversing by recursion throw the nodes, but it skips every
+     * subtree whose highest points are below the range or whose lowest points are
+     * above it.
+     * 
+     * @param prefix The name of the student that ends in this node, or the common
+     *            prefix of the names in its subtree. It is restored before returning.
+     * @param low The lowest points in the range.
+     * @param high The highest points in the range.
+     * @param students The list the found students are added to.
+     */
+    void collectRange(StringBuilder prefix, int low, int high, List<Student> students) {
+        if (max < low || min > high) {
+            return;
+        }
+        if (content >= low && content <= high) {
+            students.add(new Student(prefix.toString(), content));
+        }
+        int length = prefix.length();
+        for (Map.Entry<Integer, Node> entry : children.entrySet()) {
+            prefix.appendCodePoint(entry.getKey());
+            entry.getValue().collectRange(prefix, low, high, students);
+            prefix.setLength(length);
+        }
+    }
+
+    /**
+     * Collects the students whose names are within the maximal edit distance of a
+     * Levenshtein automaton.
+     * <p>
+     * It does it by traversing by recursion throw the nodes in lockstep with the
+     * automaton, which reads the code point of every traversed edge. A subtree is
+     * skipped as soon as the automaton can't accept any name starting with the
+     * prefix leading to it.
+     * 
+     * @param automaton The automaton.
+     * @param state The state of the automaton after reading the prefix.
+     * @param prefix The prefix leading to this node. It is restored before returning.
+     * @param pointsOf Maps the {@code content} of a node ending a name to the points
+     *            of the student, -1 if the student isn't in the course.
+     * @param matches The found students by their edit distance.
+     */
+    void collectSimilar(LevenshteinAutomaton automaton, int[] state, StringBuilder prefix,
+            IntUnaryOperator pointsOf, SortedMap<Integer, List<Student>> matches) {
+        if (content != -1 && automaton.isAccepting(state)) {
+            int points = pointsOf.applyAsInt(content);
+            if (points != -1) {
+                matches.computeIfAbsent(automaton.distance(state), distance -> new ArrayList<Student>())
+                        .add(new Student(prefix.toString(), points));
+            }
+        }
+        int length = prefix.length();
+        for (Map.Entry<Integer, Node> entry : children.entrySet()) {
+            int[] next = automaton.step(state, entry.getKey());
+            if (automaton.canAccept(next)) {
+                prefix.appendCodePoint(entry.getKey());
+                entry.getValue().collectSimilar(automaton, next, prefix, pointsOf, matches);
+                prefix.setLength(length);
+            }
+        }
+    }
+
+    /**
+     * @return The highest points in the subtree of this node, -1 if it contains no student.
+     */
+    int getMax() {
+        return max;
+    }
+
+    /**
+     * @return The number of nodes in the subtree of this node, including itself.
+     */
+    int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The points stored in this node, -1 if it doesn't end a name.
+     */
+    int getContent() {
+        return content;
+    }
+
+    /**
+     * @return The sub-nodes of this node by the code points of their edges, which must not be changed.
+     */
+    Map<Integer, Node> getChildren() {
+        return children;
     }
 
     /**
@@ -210,4 +385,28 @@ class Node {
         boolean hasCh = !children.isEmpty();
         return hasCh;
     }
-}
\ No newline at end of file
+
+    /**
+     * Copies this node and replaces one of its sub-nodes in the copy.
+     * 
+     * @param letter The code point of the replaced sub-node.
+     * @param child The new sub-node.
+     * @return The copy of this node.
+     */
+    private Node withChild(int letter, Node child) {
+        TreeMap<Integer, Node> copy = new TreeMap<Integer, Node>(children);
+        copy.put(letter, child);
+        return new Node(copy, content);
+    }
+
+    /**
+     * Cuts the first code point off a student's name.
+     * 
+     * @param studentName The student's name.
+     * @param letter The code point the name starts with.
+     * @return The suffix of the name following its first code point.
+     */
+    private static String rest(String studentName, int letter) {
+        return studentName.substring(Character.charCount(letter));
+    }
+}
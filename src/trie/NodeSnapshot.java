@@ -0,0 +1,197 @@
+package trie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of a trie that stores its students in persistent {@code Node}s.
+ * Every version has its own root, which shares all nodes but the ones on the
+ * path to the changed student with the previous version.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+final class NodeSnapshot extends TrieSnapshot {
+    /**
+     * The estimated bytes of a node: the node itself, its tree map and one entry
+     * of the tree map of its parent together with the boxed code point.
+     */
+    private static final long NODE_SIZE = 32 + 48 + 40 + 16;
+
+    private final Node root;
+
+    /**
+     * Creates a new snapshot.
+     *
+     * @param name The name of the trie.
+     * @param root The root of the version of the trie.
+     * @param version The sequence number of the latest change in the version.
+     */
+    NodeSnapshot(String name, Node root, long version) {
+        super(name, version);
+        this.root = root;
+    }
+
+    /**
+     * Performs the 'credits' method from the class {@code Node} on the
+     * {@code root}.
+     *
+     * @param word The passed student's name.
+     * @return The points of the student whose name is passed, -1 if the student does not exist.
+     */
+    @Override
+    public int credits(String word) {
+        return root.credits(word);
+    }
+
+    /**
+     * Performs the 'print' method from the class {@code Node} on the {@code root}.
+     * '#' is the symbol that the root has.
+     *
+     * @return The students' names and points in a way which is documented for the
+     *         method {@code print} in the class {@code Node}.
+     */
+    @Override
+    public String print() {
+        return "#" + "[" + root.print() + "]";
+    }
+
+    /**
+     * Finds the students with the highest points.
+     * <p>
+     * It does it by a best-first search throw the nodes: The subtrees are visited in
+     * the order of the highest points they contain, so only the subtrees that
+     * contain one of the wanted students are ever expanded.
+     *
+     * @param k The maximal number of students to find.
+     * @return The found students.
+     */
+    @Override
+    public List<Student> top(int k) {
+        List<Student> best = new ArrayList<Student>();
+        PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+        if (root.getMax() != -1) {
+            queue.add(new Candidate("", root, root.getMax()));
+        }
+        while (best.size() < k && !queue.isEmpty()) {
+            Candidate candidate = queue.poll();
+            Node node = candidate.node;
+            if (node == null) {
+                best.add(new Student(candidate.name, candidate.points));
+                continue;
+            }
+            if (node.getContent() != -1) {
+                queue.add(new Candidate(candidate.name, null, node.getContent()));
+            }
+            for (Map.Entry<Integer, Node> entry : node.getChildren().entrySet()) {
+                String name = new StringBuilder(candidate.name).appendCodePoint(entry.getKey()).toString();
+                queue.add(new Candidate(name, entry.getValue(), entry.getValue().getMax()));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the students whose points lie within a given range. Subtrees that
+     * can't contain such a student are skipped.
+     *
+     * @param low The lowest points in the range.
+     * @param high The highest points in the range.
+     * @return The found students.
+     */
+    @Override
+    public List<Student> range(int low, int high) {
+        List<Student> students = new ArrayList<Student>();
+        root.collectRange(new StringBuilder(), low, high, students);
+        return students;
+    }
+
+    @Override
+    public List<Student> similar(String query, int maxDistance) {
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton(query, maxDistance);
+        SortedMap<Integer, List<Student>> matches = new TreeMap<Integer, List<Student>>();
+        root.collectSimilar(automaton, automaton.start(), new StringBuilder(), points -> points, matches);
+        return ordered(matches);
+    }
+
+    /**
+     * Performs the 'has' method from the class {@code Node} on the {@code root}.
+     *
+     * @param studentName The passed student's name.
+     * @return {@code true} if the searched student is existed, {@code false} otherwise.
+     */
+    @Override
+    public boolean has(String studentName) {
+        return root.has(studentName);
+    }
+
+    @Override
+    public boolean hasStudents() {
+        return root.hasChildren();
+    }
+
+    @Override
+    public long estimatedSize() {
+        return root.getNodes() * NODE_SIZE;
+    }
+
+    @Override
+    void collectPoints(ArrayList<Integer> creditList) {
+        root.collectPoints(creditList);
+    }
+
+    @Override
+    boolean accepts(String studentName) {
+        return true;
+    }
+
+    @Override
+    TrieSnapshot put(String studentName, int points) {
+        return new NodeSnapshot(getCourseName(), root.add(studentName, points), getVersion() + 1);
+    }
+
+    @Override
+    TrieSnapshot remove(String studentName) {
+        return new NodeSnapshot(getCourseName(), root.delete(studentName), getVersion() + 1);
+    }
+
+    @Override
+    TrieSnapshot putAll(List<Student> changes) {
+        return new NodeSnapshot(getCourseName(), root.apply(changes, 0, changes.size(), 0),
+                getVersion() + changes.size());
+    }
+
+    /**
+     * A student or a subtree waiting to be visited by the best-first search. The
+     * candidates are ordered by their highest points and then by their names, a
+     * subtree before the student with the same name, which lets the students with
+     * the same points come out in alphabetical order.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        private final String name;
+        private final Node node;
+        private final int points;
+
+        private Candidate(String name, Node node, int points) {
+            this.name = name;
+            this.node = node;
+            this.points = points;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (points != other.points) {
+                return Integer.compare(other.points, points);
+            }
+            int byName = name.compareTo(other.name);
+            if (byName != 0) {
+                return byName;
+            }
+            return Boolean.compare(node == null, other.node == null);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package trie;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The points of the students of a course stored in a primitive array that is
+ * indexed by a dense number per student, together with a bitmap of the present
+ * students.
+ * <p>
+ * A column is shared by the versions of a course that change it in place. Once
+ * one of them has been pinned by a reader, the next change has to be applied to
+ * a copy.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+final class PointsColumn {
+    private int[] points;
+    private final BitSet present;
+    private volatile boolean pinned;
+
+    /**
+     * Creates a new empty column.
+     *
+     * @param capacity The number of students the column can store before it has to grow.
+     */
+    PointsColumn(int capacity) {
+        this.points = new int[capacity];
+        Arrays.fill(points, -1);
+        this.present = new BitSet(capacity);
+    }
+
+    private PointsColumn(PointsColumn original) {
+        this.points = original.points.clone();
+        this.present = (BitSet) original.present.clone();
+    }
+
+    /**
+     * @param index The number of a student.
+     * @return The points of the student, -1 if the student isn't present.
+     */
+    int get(int index) {
+        return index >= 0 && index < points.length ? points[index] : -1;
+    }
+
+    /**
+     * @param index The number of a student.
+     * @return {@code true} if the student is present, {@code false} otherwise.
+     */
+    boolean isPresent(int index) {
+        return index >= 0 && present.get(index);
+    }
+
+    /**
+     * @param from The number to start searching at.
+     * @return The lowest number of a present student from the given one on, -1 if there is none.
+     */
+    int nextPresent(int from) {
+        return present.nextSetBit(from);
+    }
+
+    /**
+     * @return {@code true} if no student is present, {@code false} otherwise.
+     */
+    boolean isEmpty() {
+        return present.isEmpty();
+    }
+
+    /**
+     * Sets the points of a student, who becomes present, growing the array if needed.
+     *
+     * @param index The number of the student.
+     * @param value The points of the student.
+     */
+    void set(int index, int value) {
+        if (index >= points.length) {
+            int length = points.length;
+            points = Arrays.copyOf(points, Math.max(index + 1, length + (length >> 1) + 1));
+            Arrays.fill(points, length, points.length, -1);
+        }
+        points[index] = value;
+        present.set(index);
+    }
+
+    /**
+     * Removes a student.
+     *
+     * @param index The number of the student.
+     */
+    void clear(int index) {
+        points[index] = -1;
+        present.clear(index);
+    }
+
+    /**
+     * @return The estimated number of bytes the column occupies.
+     */
+    long estimatedSize() {
+        return 16 + 4L * points.length + present.size() / 8 + 40;
+    }
+
+    /**
+     * Marks the column as seen by a reader, so it must not be changed in place anymore.
+     */
+    void pin() {
+        pinned = true;
+    }
+
+    /**
+     * @return This column if it may be changed in place, a copy of it otherwise.
+     */
+    PointsColumn forWriting() {
+        return pinned ? new PointsColumn(this) : this;
+    }
+}
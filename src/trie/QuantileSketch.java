@@ -0,0 +1,258 @@
+package trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A KLL sketch of points, which answers quantiles of many points approximately
+ * while only keeping a few hundred of them, and which can be merged with the
+ * sketches of other courses.
+ * <p>
+ * The points are kept in a hierarchy of compactors. A point in compactor
+ * {@code h} stands for {@code 2^h} points. When a compactor is full, it is
+ * sorted and every second point, starting at a random one of the first two, is
+ * moved to the compactor above, the others are dropped. The capacities shrink by
+ * a factor of 2/3 from the top compactor down, the top one holding {@value #K}
+ * points.
+ * <p>
+ * With {@code K = 200}, the rank of an answered percentile is typically off by
+ * less than 1% of all points, and with high probability by at most 1.5% (the
+ * error of KLL is proportional to {@code 1 / K}). The lowest and the highest
+ * points are kept exactly, so the 0th and the 100th percentile are exact. Merged
+ * sketches have the same bound.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public final class QuantileSketch {
+    private static final int K = 200;
+    private static final double SHRINK = 2.0 / 3.0;
+    private static final long SEED = 0x5eedL;
+
+    private final List<Compactor> compactors;
+    private final Random random;
+    private long count;
+    private int min;
+    private int max;
+
+    /**
+     * Creates a new empty sketch.
+     */
+    public QuantileSketch() {
+        this.compactors = new ArrayList<Compactor>();
+        this.random = new Random(SEED);
+        compactors.add(new Compactor());
+        this.min = Integer.MAX_VALUE;
+        this.max = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Adds points to the sketch.
+     *
+     * @param points The points.
+     */
+    public void update(int points) {
+        compactors.get(0).add(points);
+        count++;
+        min = Math.min(min, points);
+        max = Math.max(max, points);
+        compress();
+    }
+
+    /**
+     * Merges another sketch into this one, which then sketches the points of both.
+     *
+     * @param other The other sketch, which stays unchanged.
+     */
+    public void merge(QuantileSketch other) {
+        for (int h = 0; h < other.compactors.size(); h++) {
+            if (h == compactors.size()) {
+                compactors.add(new Compactor());
+            }
+            Compactor source = other.compactors.get(h);
+            for (int i = 0; i < source.size; i++) {
+                compactors.get(h).add(source.items[i]);
+            }
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress();
+    }
+
+    /**
+     * @return The number of sketched points.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The estimated number of bytes the sketch occupies in the heap,
+     *         including its random generator and its list of compactors.
+     */
+    long estimatedSize() {
+        long size = 40 + 32 + 40 + 16 + 4L * compactors.size();
+        for (Compactor compactor : compactors) {
+            size += 24 + 16 + 4L * compactor.items.length;
+        }
+        return size;
+    }
+
+    /**
+     * Gets the approximate percentile of the sketched points by the nearest rank.
+     *
+     * @param percent The percentile, between 0 and 100.
+     * @return The points at the percentile.
+     * @throws IllegalStateException If the sketch is empty.
+     */
+    public int percentile(int percent) {
+        if (count == 0) {
+            throw new IllegalStateException("empty sketch");
+        }
+        if (percent == 0) {
+            return min;
+        }
+        if (percent == 100) {
+            return max;
+        }
+        int size = 0;
+        for (Compactor compactor : compactors) {
+            size += compactor.size;
+        }
+        long[] weighted = new long[size];
+        int next = 0;
+        for (int h = 0; h < compactors.size(); h++) {
+            Compactor compactor = compactors.get(h);
+            for (int i = 0; i < compactor.size; i++) {
+                // the points in the upper half and the level in the lower half keep the order of the points
+                weighted[next++] = ((long) compactor.items[i] << 32) | h;
+            }
+        }
+        Arrays.sort(weighted);
+        long total = 0;
+        for (long item : weighted) {
+            total += 1L << (int) item;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * total));
+        long seen = 0;
+        for (long item : weighted) {
+            seen += 1L << (int) item;
+            if (seen >= rank) {
+                return (int) (item >> 32);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Encodes the sketch as text without spaces and semicolons, e.g. to send it to
+     * another process. The encoding is
+     * {@code <count>:<min>:<max>:<compactor 0>/<compactor 1>/...}, each compactor
+     * as its points separated by commas.
+     *
+     * @return The encoded sketch.
+     */
+    @Override
+    public String toString() {
+        StringBuilder encoded = new StringBuilder();
+        encoded.append(count).append(':').append(min).append(':').append(max).append(':');
+        for (int h = 0; h < compactors.size(); h++) {
+            if (h > 0) {
+                encoded.append('/');
+            }
+            Compactor compactor = compactors.get(h);
+            for (int i = 0; i < compactor.size; i++) {
+                if (i > 0) {
+                    encoded.append(',');
+                }
+                encoded.append(compactor.items[i]);
+            }
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Decodes a sketch encoded by {@link #toString()}.
+     *
+     * @param encoded The encoded sketch.
+     * @return The decoded sketch.
+     * @throws IllegalArgumentException If the text isn't an encoded sketch.
+     */
+    public static QuantileSketch parse(String encoded) {
+        String[] fields = encoded.split(":", -1);
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("invalid quantile sketch: ".concat(encoded));
+        }
+        QuantileSketch sketch = new QuantileSketch();
+        try {
+            sketch.count = Long.parseLong(fields[0]);
+            sketch.min = Integer.parseInt(fields[1]);
+            sketch.max = Integer.parseInt(fields[2]);
+            String[] levels = fields[3].split("/", -1);
+            for (int h = 0; h < levels.length; h++) {
+                if (h == sketch.compactors.size()) {
+                    sketch.compactors.add(new Compactor());
+                }
+                if (!levels[h].isEmpty()) {
+                    for (String item : levels[h].split(",")) {
+                        sketch.compactors.get(h).add(Integer.parseInt(item));
+                    }
+                }
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid quantile sketch: ".concat(encoded), ex);
+        }
+        return sketch;
+    }
+
+    /**
+     * Compacts every compactor that has reached its capacity into the one above,
+     * from the bottom up.
+     */
+    private void compress() {
+        for (int h = 0; h < compactors.size(); h++) {
+            Compactor compactor = compactors.get(h);
+            if (compactor.size < capacity(h)) {
+                continue;
+            }
+            if (h + 1 == compactors.size()) {
+                compactors.add(new Compactor());
+            }
+            Compactor above = compactors.get(h + 1);
+            Arrays.sort(compactor.items, 0, compactor.size);
+            // an odd point out stays, so an even number of points is compacted
+            int first = compactor.size % 2;
+            for (int i = first + (random.nextBoolean() ? 1 : 0); i < compactor.size; i += 2) {
+                above.add(compactor.items[i]);
+            }
+            compactor.size = first;
+        }
+    }
+
+    /**
+     * @param h The height of a compactor.
+     * @return The number of points the compactor may hold.
+     */
+    private int capacity(int h) {
+        int depth = compactors.size() - 1 - h;
+        return Math.max(2, (int) Math.ceil(K * Math.pow(SHRINK, depth)));
+    }
+
+    /**
+     * A growing array of points.
+     */
+    private static final class Compactor {
+        private int[] items = new int[8];
+        private int size;
+
+        private void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+    }
+}
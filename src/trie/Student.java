@@ -0,0 +1,45 @@
+package trie;
+
+/**
+ * A student of a course of study together with their points.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public final class Student {
+    private final String name;
+    private final int points;
+
+    /**
+     * Creates a new student.
+     *
+     * @param name The name of the student.
+     * @param points The points of the student.
+     */
+    public Student(String name, int points) {
+        this.name = name;
+        this.points = points;
+    }
+
+    /**
+     * @return The name of the student.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The points of the student.
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * @return The name of the student followed by their points in parentheses, e.g. {@code uabcd(12)}.
+     */
+    @Override
+    public String toString() {
+        return name + "(" + points + ")";
+    }
+}
@@ -0,0 +1,87 @@
+package trie;
+
+import java.util.Arrays;
+
+/**
+ * A dictionary that interns student names and gives every name a dense number,
+ * starting with 0. It is shared by the courses created by
+ * {@link Trie#withDictionary(String, StudentDictionary)}, so every name is
+ * stored once, however many courses the student takes, and each course only
+ * keeps a primitive column of points indexed by these numbers.
+ * <p>
+ * The names are kept in a persistent trie whose nodes store the numbers, so
+ * looking up a name never blocks while other names are interned. Numbers are
+ * never reused, even if a student leaves all courses.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public final class StudentDictionary {
+    private volatile Node root;
+    private volatile String[] names;
+    private int size;
+
+    /**
+     * Creates a new empty dictionary.
+     */
+    public StudentDictionary() {
+        this.root = new Node();
+        this.names = new String[64];
+    }
+
+    /**
+     * Looks up the number of a name.
+     *
+     * @param studentName The student's name.
+     * @return The number of the name, -1 if it hasn't been interned.
+     */
+    public int lookup(String studentName) {
+        return root.credits(studentName);
+    }
+
+    /**
+     * Gets the number of a name, giving it the next free number if it hasn't been
+     * interned yet.
+     *
+     * @param studentName The student's name.
+     * @return The number of the name.
+     */
+    public synchronized int intern(String studentName) {
+        int index = lookup(studentName);
+        if (index != -1) {
+            return index;
+        }
+        index = size;
+        String[] current = names;
+        if (index == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[index] = studentName;
+        names = current;
+        size++;
+        root = root.add(studentName, index);
+        return index;
+    }
+
+    /**
+     * @param index The number of an interned name.
+     * @return The name.
+     */
+    public String nameOf(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return The root of the trie of the interned names, whose nodes store the numbers.
+     */
+    Node getRoot() {
+        return root;
+    }
+
+    /**
+     * @return The number of interned names.
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
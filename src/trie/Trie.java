@@ -1,149 +1,481 @@
 package trie;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
 
 /**
  * The 'Trie' tree containing its nodes. It's a tree that can have many
  * sequences of characters and relatively high number of branches branches.
- * 
+ * <p>
+ * Every change of a student's points is published to the change feed of the
+ * trie (see {@link #changesAfter(long)}), so other systems can keep their own
+ * views of the course up to date without polling it. The changes are only
+ * retained from the first call of {@link #changesAfter(long)} on.
+ * <p>
+ * The trie is versioned: every change creates a new {@link TrieSnapshot}, which
+ * by default copies the path to the changed student (see {@code Node}). Taking a
+ * snapshot takes the latest version under the lock of the writers, so readers
+ * never see half-applied changes and only wait for a change in progress.
+ * Changes are applied one at a time.
+ * <p>
+ * A trie created by {@link #withFixedFormat(String)} or
+ * {@link #withDictionary(String, StudentDictionary)} stores its students in a
+ * direct-indexed array instead, which it changes in place until a snapshot is
+ * taken. Its own read methods may therefore observe a concurrent change, while
+ * a snapshot taken from it never does.
+ * <p>
+ * A trie can keep a Bloom filter of its students (see {@link #enableFilter()}),
+ * which answers most lookups of students that don't exist with a few hashes
+ * instead of walking the nodes.
+ * <p>
+ * Many changes can be applied at once by {@link #apply(Map)}, which derives the
+ * version after all of them in a single pass.
+ * <p>
+ * A trie keeps mergeable sketches of its points and its student names (see
+ * {@link #mergeSketchesInto(QuantileSketch, DistinctSketch)}), so statistics over
+ * many courses don't have to scan all of their students. A new student is added
+ * to the sketches right away. Since sketches can't forget points, they are
+ * rebuilt from the current students when they are needed after points have been
+ * changed or students have been removed.
+ *
  * @author Moayad Yaghi
  * @version 1.0
  */
 public class Trie {
+    /**
+     * The estimated bytes of a trie besides its students, filter and sketches: the
+     * trie itself and its change feed with its list of subscriptions.
+     */
+    private static final long TRIE_SIZE = 48 + 56 + 16 + 24;
+
     private String name;
-    private Node root;
+    private volatile TrieSnapshot current;
+    private ChangeFeed changes;
+    private volatile BloomFilter filter;
+    private double falsePositiveRate;
+    private int filtered;
+    private int staleDeletes;
+    private QuantileSketch quantiles;
+    private DistinctSketch distinct;
+    private boolean staleQuantiles;
+    private boolean staleDistinct;
 
     /**
      * Creates a new trie named {@code name}.
-     * 
+     *
      * @param name The name of the created trie.
      */
     public Trie(String name) {
+        this(name, new NodeSnapshot(name, new Node(), 0));
+    }
+
+    /**
+     * Creates a new trie with an empty first version.
+     *
+     * @param name The name of the created trie.
+     * @param empty The empty snapshot that determines how the trie stores its students.
+     */
+    private Trie(String name, TrieSnapshot empty) {
         this.name = name;
-        root = new Node();
+        current = empty;
+        changes = new ChangeFeed();
+        quantiles = new QuantileSketch();
+        distinct = new DistinctSketch();
+    }
+
+    /**
+     * Creates a new trie that only accepts student names of the format
+     * {@code u[a-z]{4}} and stores their points in a direct-indexed array instead
+     * of nodes. Adding a name of another format fails.
+     *
+     * @param name The name of the created trie.
+     * @return The created trie.
+     */
+    public static Trie withFixedFormat(String name) {
+        return new Trie(name, new FixedFormatSnapshot(name));
+    }
+
+    /**
+     * Creates a new trie that takes the numbers of its students from a dictionary
+     * shared with other courses and only stores a primitive column of their points
+     * indexed by these numbers.
+     *
+     * @param name The name of the created trie.
+     * @param dictionary The shared dictionary of student names.
+     * @return The created trie.
+     */
+    public static Trie withDictionary(String name, StudentDictionary dictionary) {
+        return new Trie(name, new DictionarySnapshot(name, dictionary));
+    }
+
+    /**
+     * Enables a Bloom filter with a false positive rate of 1% for the negative
+     * lookups of this trie.
+     *
+     * @return This trie.
+     */
+    public Trie enableFilter() {
+        return enableFilter(0.01);
+    }
+
+    /**
+     * Enables a Bloom filter for the negative lookups of this trie. The filter is
+     * filled when a student is added. Deleted students stay in the filter until it
+     * is rebuilt from the current students, which happens as soon as half of the
+     * names in it have been deleted, or when it has reached its capacity.
+     *
+     * @param falsePositiveRate The wanted false positive rate of the filter.
+     * @return This trie.
+     */
+    public synchronized Trie enableFilter(double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+        rebuildFilter();
+        return this;
     }
 
     /**
-     * Performs the 'add' method from the class {@code Node} on the {@code root}.
-     * 
+     * @return The expected false positive rate of the Bloom filter with the names
+     *         it currently contains, 0 if no filter is enabled.
+     */
+    public synchronized double filterFalsePositiveRate() {
+        return filter == null ? 0 : filter.falsePositiveRate(filtered);
+    }
+
+    /**
+     * Adds a student and their points to the trie, or changes the points of an
+     * existing student.
+     *
      * @param word The passed student' name.
      * @param points The passed points.
-     * @return {@code true} if the process went normally, {@code false} otherwise.
+     * @return {@code true} if the process went normally, {@code false} if the
+     *         name can't be stored by this trie.
      */
-    public boolean add(String word, int points) {
-        return root.add(word, points);
+    public synchronized boolean add(String word, int points) {
+        if (!current.accepts(word)) {
+            return false;
+        }
+        int previousPoints = current.credits(word);
+        if (previousPoints == -1 && filter != null) {
+            if (filtered == filter.getCapacity()) {
+                rebuildFilter();
+            }
+            filter.put(word);
+            filtered++;
+        }
+        current = current.put(word, points);
+        updateSketches(word, points, previousPoints);
+        if (previousPoints == -1) {
+            changes.publish(current.getVersion(), TrieChange.Type.ADDED, word, points, previousPoints);
+        } else {
+            changes.publish(current.getVersion(), TrieChange.Type.MODIFIED, word, points, previousPoints);
+        }
+        return true;
+    }
+
+    /**
+     * Applies a batch of changes at once. Either all changes are applied or, if a
+     * name can't be stored by this trie, none of them. Every change is still
+     * published to the change feed with its own sequence number, but readers only
+     * see the versions before and after the whole batch.
+     *
+     * @param pointsByName The new points by student's name, -1 for a student to be
+     *        removed. Removing a student who does not exist changes nothing.
+     * @return {@code true} if the changes have been applied, {@code false} if a
+     *         name can't be stored by this trie.
+     */
+    public synchronized boolean apply(Map<String, Integer> pointsByName) {
+        List<Map.Entry<String, Integer>> ordered = new ArrayList<Map.Entry<String, Integer>>(pointsByName.entrySet());
+        ordered.sort((first, second) -> TrieSnapshot.compareNames(first.getKey(), second.getKey()));
+        List<Student> batch = new ArrayList<Student>();
+        List<Integer> previous = new ArrayList<Integer>();
+        for (Map.Entry<String, Integer> change : ordered) {
+            String word = change.getKey();
+            int points = change.getValue();
+            if (points != -1 && !current.accepts(word)) {
+                return false;
+            }
+            int previousPoints = current.credits(word);
+            if (previousPoints != points) {
+                batch.add(new Student(word, points));
+                previous.add(previousPoints);
+            }
+        }
+        if (filter != null) {
+            List<String> added = new ArrayList<String>();
+            for (int i = 0; i < batch.size(); i++) {
+                if (previous.get(i) == -1) {
+                    added.add(batch.get(i).getName());
+                }
+            }
+            // the rebuilt filter only knows the current students, so it is sized for the added ones first
+            if (filtered + added.size() > filter.getCapacity()) {
+                rebuildFilter(added.size());
+            }
+            for (String word : added) {
+                filter.put(word);
+                filtered++;
+            }
+        }
+        long sequence = current.getVersion();
+        current = current.putAll(batch);
+        int deleted = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Student change = batch.get(i);
+            int previousPoints = previous.get(i);
+            updateSketches(change.getName(), change.getPoints(), previousPoints);
+            TrieChange.Type type = TrieChange.Type.MODIFIED;
+            if (change.getPoints() == -1) {
+                type = TrieChange.Type.DELETED;
+                deleted++;
+            } else if (previousPoints == -1) {
+                type = TrieChange.Type.ADDED;
+            }
+            changes.publish(++sequence, type, change.getName(), change.getPoints(), previousPoints);
+        }
+        if (filter != null && deleted > 0) {
+            staleDeletes += deleted;
+            if (staleDeletes * 2 > filtered) {
+                rebuildFilter();
+            }
+        }
+        return true;
     }
 
     /**
-     * Performs the 'modify' method from the class {@code Node} on the {@code root}.
-     * 
+     * Changes the points of an existing student.
+     *
      * @param word The passed student's name.
      * @param points The passed points.
-     * @return {@code true} if the process went normally, {@code false} otherwise.
+     * @return {@code true} if the process went normally, {@code false} if the student does not exist.
      */
-    public boolean modify(String word, int points) {
-        return root.modify(word, points);
+    public synchronized boolean modify(String word, int points) {
+        int previousPoints = current.credits(word);
+        if (previousPoints == -1) {
+            return false;
+        }
+        current = current.put(word, points);
+        updateSketches(word, points, previousPoints);
+        changes.publish(current.getVersion(), TrieChange.Type.MODIFIED, word, points, previousPoints);
+        return true;
     }
 
     /**
-     * Performs the 'delete' method from the class {@code Node} on the {@code root}.
-     * 
+     * Removes a student from the trie.
+     *
      * @param word The passed student's name.
      */
-    public void delete(String word) {
-        root.delete(word);
+    public synchronized void delete(String word) {
+        int previousPoints = current.credits(word);
+        if (previousPoints != -1) {
+            current = current.remove(word);
+            updateSketches(word, -1, previousPoints);
+            changes.publish(current.getVersion(), TrieChange.Type.DELETED, word, -1, previousPoints);
+            if (filter != null && ++staleDeletes * 2 > filtered) {
+                rebuildFilter();
+            }
+        }
     }
 
     /**
-     * Performs the 'credits' method from the class {@code Node} on the
-     * {@code root}.
-     * 
+     * Performs the 'credits' method on the latest snapshot.
+     *
      * @param word The passed student's name.
-     * @return The points of the student whose name is passed.
+     * @return The points of the student whose name is passed, -1 if the student does not exist.
      */
     public int credits(String word) {
-        return root.credits(word);
+        BloomFilter negative = filter;
+        if (negative != null && !negative.mightContain(word)) {
+            return -1;
+        }
+        return current.credits(word);
     }
 
     /**
-     * Performs the 'print' method from the class {@code Node} on the {@code root}.
-     * '#' is the symbol that the root has.
-     * 
+     * Performs the 'print' method on the latest snapshot.
+     *
      * @return The students' names and points in a way which is documented for the
      *         method {@code print} in the class {@code Node}.
      */
     public String print() {
-        return "#" + "[" + root.print() + "]";
+        return current.print();
     }
 
     /**
-     * Computes the average value of all points of students in a particular course
-     * of study.
-     * <p>
-     * It does it by getting the points of students by using 'collectPoints' method
-     * from the class {@code Node} on the {@code root} and then divides the sum of
-     * all points by the number of students.
-     * 
+     * Performs the 'average' method on the latest snapshot.
+     *
      * @return The average value of all students' points.
      */
     public int average() {
-        ArrayList<Integer> creditList = new ArrayList<Integer>();
-        root.collectPoints(creditList);
-        int n = creditList.size();
-        int average = 0;
-        for (int i = 0; i < n; i++) {
-            average += creditList.get(i);
-        }
-        return average / n;
+        return current.average();
     }
 
     /**
-     * Computes the median (central value) of all students' scores of a particular
-     * course.
-     * <p>
-     * It does it by getting the points of students by using 'collectPoints' method
-     * from the class {@code Node} on the {@code root} then it sorts them and
-     * afterwards it computes the median. If the number of students is
-     * <ul>
-     * <li>odd: it simply returns the value in the middle.
-     * <li>even: it calculates the average of the two middle values.
-     * </ul>
-     * 
+     * Performs the 'median' method on the latest snapshot.
+     *
      * @return The median (central value) of all students' points.
      */
     public int median() {
-        ArrayList<Integer> creditList = new ArrayList<Integer>();
-        root.collectPoints(creditList);
-        Collections.sort(creditList);
-        int n = creditList.size();
-        int length = n - 1;
-        int median = 0;
-        if (n % 2 == 0) {
-            median = (creditList.get(length / 2) + creditList.get((length / 2) + 1)) / 2;
-        } else {
-            median = creditList.get((length + 1) / 2);
-        }
-        return median;
+        return current.median();
+    }
+
+    /**
+     * Performs the 'top' method on the latest snapshot.
+     *
+     * @param k The maximal number of students to find.
+     * @return The students with the highest points.
+     */
+    public List<Student> top(int k) {
+        return current.top(k);
     }
 
     /**
-     * Performs the 'has' method from the class {@code Node} on the {@code root}.
-     * 
+     * Performs the 'range' method on the latest snapshot.
+     *
+     * @param low The lowest points in the range.
+     * @param high The highest points in the range.
+     * @return The students whose points lie within the range.
+     */
+    public List<Student> range(int low, int high) {
+        return current.range(low, high);
+    }
+
+    /**
+     * Performs the 'similar' method on the latest snapshot.
+     *
+     * @param query The query name.
+     * @param maxDistance The maximal number of inserted, deleted or substituted letters.
+     * @return The students whose names are within the edit distance of the query.
+     */
+    public List<Student> similar(String query, int maxDistance) {
+        return current.similar(query, maxDistance);
+    }
+
+    /**
+     * Performs the 'has' method on the latest snapshot.
+     *
      * @param studentName The passed student's name.
      * @return {@code true} if the searched student is existed, {@code false} otherwise.
      */
     public boolean has(String studentName) {
-        return root.has(studentName);
+        BloomFilter negative = filter;
+        if (negative != null && !negative.mightContain(studentName)) {
+            return false;
+        }
+        return current.has(studentName);
+    }
+
+    /**
+     * Checks if a student's name can be stored by this trie.
+     *
+     * @param studentName The student's name.
+     * @return {@code true} if the name can be stored, {@code false} otherwise.
+     */
+    public boolean accepts(String studentName) {
+        return current.accepts(studentName);
     }
 
     /**
      * Checks if a course of study has at least one student.
-     * 
+     *
      * @return {@code true} if the course contains at least one student, {@code false} otherwise.
      */
     public boolean hasStudents() {
-        return root.hasChildren();
+        return current.hasStudents();
+    }
+
+    /**
+     * Estimates the heap memory the latest version of this trie occupies, not
+     * counting data that is shared with other courses. Besides the students, it
+     * counts the retained changes, the Bloom filter and the sketches.
+     *
+     * @return The estimated number of bytes.
+     */
+    public synchronized long estimatedSize() {
+        BloomFilter negative = filter;
+        return TRIE_SIZE + current.estimatedSize() + changes.estimatedSize()
+                + (negative == null ? 0 : negative.estimatedSize()) + quantiles.estimatedSize()
+                + distinct.estimatedSize();
+    }
+
+    /**
+     * Merges the sketches of the points and the student names of this trie into
+     * other sketches, rebuilding them first if they are stale.
+     *
+     * @param pointsSketch The sketch the points are merged into.
+     * @param namesSketch The sketch the student names are merged into.
+     */
+    public synchronized void mergeSketchesInto(QuantileSketch pointsSketch, DistinctSketch namesSketch) {
+        if (staleQuantiles || staleDistinct) {
+            List<Student> students = current.range(0, Integer.MAX_VALUE);
+            if (staleQuantiles) {
+                quantiles = new QuantileSketch();
+                for (Student student : students) {
+                    quantiles.update(student.getPoints());
+                }
+                staleQuantiles = false;
+            }
+            if (staleDistinct) {
+                distinct = new DistinctSketch();
+                for (Student student : students) {
+                    distinct.update(student.getName());
+                }
+                staleDistinct = false;
+            }
+        }
+        pointsSketch.merge(quantiles);
+        namesSketch.merge(distinct);
+    }
+
+    /**
+     * Gets the latest version of this trie. This takes constant time and the
+     * snapshot stays unchanged while the trie is changed further. It is taken under
+     * the lock of the writers, so a direct-indexed array is never pinned while a
+     * writer is about to change it in place.
+     *
+     * @return The latest snapshot.
+     */
+    public synchronized TrieSnapshot snapshot() {
+        return current.pin();
+    }
+
+    /**
+     * Gets a publisher of the changes of this trie that follow a given sequence
+     * number. A subscriber passing 0 receives all changes since the creation of the
+     * trie, as long as they are still retained, and one that has already seen some
+     * changes can resume after the last one it has seen. Only as many changes as
+     * requested are delivered to a subscriber. The changes are retained from the
+     * first call of this method on; a subscriber that needs earlier changes is
+     * terminated with an error and has to start over from a fresh snapshot. So is
+     * a subscriber passing a sequence number that hasn't been reached yet, e.g. the
+     * one of an evicted course, whose sequence numbers start over once it is
+     * loaded again.
+     *
+     * @param sequence The sequence number of the last change already known.
+     * @return The publisher of the following changes.
+     */
+    public Flow.Publisher<TrieChange> changesAfter(long sequence) {
+        return changes.publisher(sequence);
+    }
+
+    /**
+     * Closes the change feed of this trie, e.g. when the course is evicted or
+     * replaced by another trie. The subscribers receive the changes published so
+     * far and are then terminated with an {@link IllegalStateException}, so they
+     * know to subscribe to the trie that replaces this one.
+     *
+     * @param reason The message of the error the subscribers are terminated with.
+     */
+    public void closeChanges(String reason) {
+        changes.close(new IllegalStateException(reason));
+    }
+
+    /**
+     * @return The sequence number of the latest change, 0 if there is none.
+     */
+    public long getSequence() {
+        return current.getVersion();
     }
 
     /**
@@ -152,4 +484,51 @@ public class Trie {
     public String getCourseName() {
         return name;
     }
-}
\ No newline at end of file
+
+    /**
+     * Updates the sketches after a change, or marks them as stale if they can't
+     * follow it.
+     *
+     * @param word The student's name.
+     * @param points The new points, -1 if the student has been removed.
+     * @param previousPoints The previous points, -1 if the student has been added.
+     */
+    private void updateSketches(String word, int points, int previousPoints) {
+        if (previousPoints == -1) {
+            if (!staleQuantiles) {
+                quantiles.update(points);
+            }
+            if (!staleDistinct) {
+                distinct.update(word);
+            }
+        } else if (points != previousPoints) {
+            staleQuantiles = true;
+            staleDistinct |= points == -1;
+        }
+    }
+
+    /**
+     * Rebuilds the Bloom filter from the current students, sized for twice as many
+     * students. Readers keep using the old filter until the new one is complete.
+     */
+    private void rebuildFilter() {
+        rebuildFilter(0);
+    }
+
+    /**
+     * Rebuilds the Bloom filter from the current students, sized for twice as many
+     * students as there are after a number of students have been added.
+     *
+     * @param adding The number of students about to be added.
+     */
+    private void rebuildFilter(int adding) {
+        List<Student> students = current.range(0, Integer.MAX_VALUE);
+        BloomFilter rebuilt = new BloomFilter(Math.max(1024, 2 * (students.size() + adding)), falsePositiveRate);
+        for (Student student : students) {
+            rebuilt.put(student.getName());
+        }
+        filtered = students.size();
+        staleDeletes = 0;
+        filter = rebuilt;
+    }
+}
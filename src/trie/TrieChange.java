@@ -0,0 +1,92 @@
+package trie;
+
+/**
+ * A change of a student's points in a course of study, as published by the
+ * change feed of a {@link Trie}. The changes of a trie have monotonically
+ * increasing sequence numbers starting with 1.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public final class TrieChange {
+    /**
+     * The kinds of changes.
+     */
+    public enum Type {
+        /**
+         * A student has been added to the course.
+         */
+        ADDED,
+        /**
+         * The points of a student have been changed.
+         */
+        MODIFIED,
+        /**
+         * A student has been removed from the course.
+         */
+        DELETED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String studentName;
+    private final int points;
+    private final int previousPoints;
+
+    /**
+     * Creates a new change.
+     *
+     * @param sequence The sequence number of the change.
+     * @param type The kind of the change.
+     * @param studentName The name of the changed student.
+     * @param points The points after the change, -1 for a deleted student.
+     * @param previousPoints The points before the change, -1 for an added student.
+     */
+    TrieChange(long sequence, Type type, String studentName, int points, int previousPoints) {
+        this.sequence = sequence;
+        this.type = type;
+        this.studentName = studentName;
+        this.points = points;
+        this.previousPoints = previousPoints;
+    }
+
+    /**
+     * @return The sequence number of the change.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return The kind of the change.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The name of the changed student.
+     */
+    public String getStudentName() {
+        return studentName;
+    }
+
+    /**
+     * @return The points after the change, -1 for a deleted student.
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * @return The points before the change, -1 for an added student.
+     */
+    public int getPreviousPoints() {
+        return previousPoints;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + type + " " + studentName + " " + previousPoints + " -> " + points;
+    }
+}
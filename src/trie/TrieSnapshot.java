@@ -0,0 +1,316 @@
+package trie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * A consistent, read-only version of a {@link Trie}. A snapshot is pinned by
+ * simply holding a reference to it: it keeps seeing the students and points of
+ * its version while the trie is changed further, and it is reclaimed by the
+ * garbage collector together with the data only it still uses once nobody
+ * references it anymore.
+ * <p>
+ * The version of a snapshot is the sequence number of the latest change it
+ * contains, so a consumer can take a snapshot and then follow
+ * {@link Trie#changesAfter(long)} its version without missing a change, or is
+ * told by an error that it has to take a new snapshot.
+ * <p>
+ * The subclasses implement the different ways a course can store its students.
+ * They derive the next version of the trie from a snapshot by
+ * {@link #put(String, int)} and {@link #remove(String)}.
+ *
+ * @author Moayad Yaghi
+ * @version 1.0
+ */
+public abstract class TrieSnapshot {
+    private final String name;
+    private final long version;
+
+    /**
+     * Creates a new snapshot.
+     *
+     * @param name The name of the trie.
+     * @param version The sequence number of the latest change in the version.
+     */
+    TrieSnapshot(String name, long version) {
+        this.name = name;
+        this.version = version;
+    }
+
+    /**
+     * @return The sequence number of the latest change in this snapshot, 0 if there is none.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The course name.
+     */
+    public String getCourseName() {
+        return name;
+    }
+
+    /**
+     * Gets the points of a student.
+     *
+     * @param word The passed student's name.
+     * @return The points of the student whose name is passed, -1 if the student does not exist.
+     */
+    public abstract int credits(String word);
+
+    /**
+     * Prints the summary of all students' points in the course. '#' is the symbol
+     * that the root has.
+     *
+     * @return The students' names and points in a way which is documented for the
+     *         method {@code print} in the class {@code Node}.
+     */
+    public abstract String print();
+
+    /**
+     * Computes the average value of all points of students in a particular course
+     * of study.
+     * <p>
+     * It does it by getting the points of students by using 'collectPoints' method
+     * and then divides the sum of all points by the number of students.
+     *
+     * @return The average value of all students' points.
+     */
+    public int average() {
+        ArrayList<Integer> creditList = new ArrayList<Integer>();
+        collectPoints(creditList);
+        int n = creditList.size();
+        int average = 0;
+        for (int i = 0; i < n; i++) {
+            average += creditList.get(i);
+        }
+        return average / n;
+    }
+
+    /**
+     * Computes the median (central value) of all students' scores of a particular
+     * course.
+     * <p>
+     * It does it by getting the points of students by using 'collectPoints' method
+     * then it sorts them and afterwards it computes the median. If the number of
+     * students is
+     * <ul>
+     * <li>odd: it simply returns the value in the middle.
+     * <li>even: it calculates the average of the two middle values.
+     * </ul>
+     *
+     * @return The median (central value) of all students' points.
+     */
+    public int median() {
+        ArrayList<Integer> creditList = new ArrayList<Integer>();
+        collectPoints(creditList);
+        Collections.sort(creditList);
+        int n = creditList.size();
+        int length = n - 1;
+        int median = 0;
+        if (n % 2 == 0) {
+            median = (creditList.get(length / 2) + creditList.get((length / 2) + 1)) / 2;
+        } else {
+            median = creditList.get((length + 1) / 2);
+        }
+        return median;
+    }
+
+    /**
+     * Finds the students with the highest points, ordered by their points from the
+     * highest to the lowest and students with the same points by their names.
+     *
+     * @param k The maximal number of students to find.
+     * @return The found students.
+     */
+    public abstract List<Student> top(int k);
+
+    /**
+     * Finds the students whose points lie within a given range, ordered by their
+     * names.
+     *
+     * @param low The lowest points in the range.
+     * @param high The highest points in the range.
+     * @return The found students.
+     */
+    public abstract List<Student> range(int low, int high);
+
+    /**
+     * Finds the students whose names are within a maximal edit distance of a
+     * query, e.g. to suggest the right name for a mistyped one. The names are
+     * matched by walking the students in lockstep with a Levenshtein automaton, so
+     * whole groups of names that can't match are skipped.
+     *
+     * @param query The query name.
+     * @param maxDistance The maximal number of inserted, deleted or substituted letters.
+     * @return The found students, ordered by their edit distance and then by their names.
+     */
+    public abstract List<Student> similar(String query, int maxDistance);
+
+    /**
+     * Checks if a student is existed or not.
+     *
+     * @param studentName The passed student's name.
+     * @return {@code true} if the searched student is existed, {@code false} otherwise.
+     */
+    public abstract boolean has(String studentName);
+
+    /**
+     * Checks if the course of study has at least one student.
+     *
+     * @return {@code true} if the course contains at least one student, {@code false} otherwise.
+     */
+    public abstract boolean hasStudents();
+
+    /**
+     * Estimates the number of bytes of heap memory the data of this snapshot
+     * occupies. Data shared with other courses isn't counted.
+     *
+     * @return The estimated number of bytes.
+     */
+    public abstract long estimatedSize();
+
+    /**
+     * Collects all the students' points and adds them into a given list.
+     *
+     * @param creditList The list that is going to have the points of students.
+     */
+    abstract void collectPoints(ArrayList<Integer> creditList);
+
+    /**
+     * Checks if a student's name can be stored in this kind of snapshot.
+     *
+     * @param studentName The student's name.
+     * @return {@code true} if the name can be stored, {@code false} otherwise.
+     */
+    abstract boolean accepts(String studentName);
+
+    /**
+     * Creates the next version of the trie in which a student has the given points.
+     * The student is added if they don't exist yet.
+     *
+     * @param studentName The student's name, which must be accepted by this snapshot.
+     * @param points The points of the student.
+     * @return The next version.
+     */
+    abstract TrieSnapshot put(String studentName, int points);
+
+    /**
+     * Creates the next version of the trie without a student.
+     *
+     * @param studentName The name of an existing student.
+     * @return The next version.
+     */
+    abstract TrieSnapshot remove(String studentName);
+
+    /**
+     * Creates the version of the trie that follows a batch of changes, without
+     * creating the versions in between. The version number still advances by one
+     * per change.
+     *
+     * @param changes The students with their new points, -1 for a student to be
+     *        removed, ordered by their names as by {@link #compareNames(String, String)}.
+     *        Every name occurs once, is accepted by this snapshot and a removed
+     *        student exists.
+     * @return The version after the batch.
+     */
+    abstract TrieSnapshot putAll(List<Student> changes);
+
+    /**
+     * Prints students in the same format as {@code Node} does.
+     * <p>
+     * It does it by going throw the names in their order. Between two consecutive
+     * names, the brackets of the letters the previous name doesn't share with the
+     * next one are closed, and the brackets of the new letters are opened. If the
+     * previous name is a prefix of the next one, the bracket of its last letter is
+     * opened right after its points.
+     *
+     * @param students The students, ordered by their names as by {@link #compareNames(String, String)}.
+     * @return The summary of the students with their points.
+     */
+    static String print(List<Student> students) {
+        StringBuilder summary = new StringBuilder("#[");
+        int[] previous = null;
+        for (Student student : students) {
+            int[] name = student.getName().codePoints().toArray();
+            int shared = 0;
+            if (previous != null) {
+                while (shared < previous.length && name[shared] == previous[shared]) {
+                    shared++;
+                }
+                if (shared == previous.length) {
+                    summary.append("[");
+                }
+                for (int i = shared; i < previous.length - 1; i++) {
+                    summary.append("]");
+                }
+            }
+            for (int i = shared; i < name.length; i++) {
+                summary.appendCodePoint(name[i]);
+                if (i < name.length - 1) {
+                    summary.append("[");
+                }
+            }
+            summary.append("(").append(student.getPoints()).append(")");
+            previous = name;
+        }
+        if (previous != null) {
+            for (int i = 0; i < previous.length - 1; i++) {
+                summary.append("]");
+            }
+        }
+        return summary.append("]").toString();
+    }
+
+    /**
+     * Lists the students found by {@link #similar(String, int)}.
+     *
+     * @param matches The found students by their edit distance, each ordered by their names.
+     * @return The students ordered by their edit distance and then by their names.
+     */
+    static List<Student> ordered(SortedMap<Integer, List<Student>> matches) {
+        List<Student> students = new ArrayList<Student>();
+        for (List<Student> sameDistance : matches.values()) {
+            students.addAll(sameDistance);
+        }
+        return students;
+    }
+
+    /**
+     * Compares two names by their code points, which is the order the sub-nodes of
+     * a {@code Node} are kept in.
+     *
+     * @param first The first name.
+     * @param second The second name.
+     * @return A negative number, zero or a positive number if the first name comes
+     *         before, is equal to or comes after the second one.
+     */
+    static int compareNames(String first, String second) {
+        int i = 0;
+        int j = 0;
+        while (i < first.length() && j < second.length()) {
+            int a = first.codePointAt(i);
+            int b = second.codePointAt(j);
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        return Integer.compare(first.length() - i, second.length() - j);
+    }
+
+    /**
+     * Marks this snapshot as handed out to a reader. Kinds of snapshots that
+     * change their data in place for the next version must copy it instead once
+     * they are pinned.
+     *
+     * @return This snapshot.
+     */
+    TrieSnapshot pin() {
+        return this;
+    }
+}